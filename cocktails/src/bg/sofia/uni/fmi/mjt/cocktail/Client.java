@@ -1,10 +1,13 @@
 package bg.sofia.uni.fmi.mjt.cocktail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 public class Client {
@@ -29,19 +32,30 @@ public class Client {
                     System.out.println("Disconnected from the server");
                     break;
                 }
-                buffer.clear(); // switch to writing mode
-                buffer.put(message.getBytes()); // buffer fill
-                buffer.flip(); // switch to reading mode
-                socketChannel.write(buffer); // buffer drain
-
-                buffer.clear(); // switch to writing mode
-                socketChannel.read(buffer); // buffer fill
-                buffer.flip(); // switch to reading mode
-
-                byte[] byteArray = new byte[buffer.remaining()];
-                buffer.get(byteArray);
-                String reply = new String(byteArray, "UTF-8"); // buffer drain
-                System.out.println(reply);
+                ByteBuffer request = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
+                while (request.hasRemaining()) {
+                    socketChannel.write(request);
+                }
+
+                //a reply may take many reads, it ends with a new line
+                ByteArrayOutputStream reply = new ByteArrayOutputStream();
+                boolean replyEnded = false;
+                while (!replyEnded) {
+                    buffer.clear(); // switch to writing mode
+                    if (socketChannel.read(buffer) < 0) { // buffer fill
+                        throw new EOFException("server closed the connection");
+                    }
+                    buffer.flip(); // switch to reading mode
+                    while (buffer.hasRemaining()) {
+                        byte next = buffer.get();
+                        if (next == '\n') {
+                            replyEnded = true;
+                            break;
+                        }
+                        reply.write(next);
+                    }
+                }
+                System.out.println(reply.toString(StandardCharsets.UTF_8)); // buffer drain
             }
 
         } catch (IOException e) {
@@ -8,9 +8,13 @@ import bg.sofia.uni.fmi.mjt.cocktail.server.storage.exceptions.CocktailAlreadyEx
 import bg.sofia.uni.fmi.mjt.cocktail.server.storage.exceptions.CocktailNotFoundException;
 import bg.sofia.uni.fmi.mjt.cocktail.server.storage.exceptions.InvalidIngredientException;
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 public class CommandExecutor {
@@ -22,6 +26,14 @@ public class CommandExecutor {
     private static final String GET_ALL = "all";
     private static final String GET_BY_NAME = "by-name";
     private static final String GET_BY_INGREDIENT = "by-ingredient";
+    private static final String GET_BY_INGREDIENTS = "by-ingredients";
+    private static final String GET_MADE_FROM = "made-from";
+    //marks an ingredient that must not be in the cocktail, as in "get by-ingredients gin lime !sugar"
+    private static final String EXCLUDED_PREFIX = "!";
+    //pages through the cocktails a get returns, as in "get all limit=50 offset=100"
+    //cocktails come in the order they were created, so pages stay stable while more are added
+    private static final String LIMIT = "limit=";
+    private static final String OFFSET = "offset=";
     private static final String CREATE = "create";
     private CocktailStorage storage;
 
@@ -40,16 +52,41 @@ public class CommandExecutor {
             if (arguments == null || arguments.isEmpty()) {
                 return new Response(ERROR_STATUS, "get command needs parameters", null);
             }
+            int limit = Integer.MAX_VALUE;
+            int offset = 0;
+            List<String> rest = new ArrayList<>();
+            try {
+                for (String argument : arguments) {
+                    if (argument.startsWith(LIMIT)) {
+                        limit = Integer.parseInt(argument.substring(LIMIT.length()));
+                    } else if (argument.startsWith(OFFSET)) {
+                        offset = Integer.parseInt(argument.substring(OFFSET.length()));
+                    } else if (LIMIT.equals(argument + "=") || OFFSET.equals(argument + "=")) {
+                        //"limit 50" would otherwise be taken for a cocktail or an ingredient named limit
+                        return new Response(ERROR_STATUS, "limit and offset need a value, as in limit=50", null);
+                    } else {
+                        rest.add(argument);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return new Response(ERROR_STATUS, "limit and offset must be numbers", null);
+            }
+            if (limit < 0 || offset < 0) {
+                return new Response(ERROR_STATUS, "limit and offset cannot be negative", null);
+            }
+            arguments = rest;
+            if (arguments.isEmpty()) {
+                return new Response(ERROR_STATUS, "get command needs parameters", null);
+            }
             String getMethod = arguments.get(0);
             if (getMethod.equals(GET_ALL)) {
-                return new Response(OK_STATUS, null , storage.getCocktails().toArray(new Cocktail[0]));
+                return new Response(OK_STATUS, null , page(storage.getCocktails(), offset, limit));
             } else if (getMethod.equals(GET_BY_NAME)) {
                 if (arguments.size() < 2) {
                     return new Response(ERROR_STATUS, "argument not passed to get by name", null);
                 }
                 try {
-                    Cocktail[] cocktail = { storage.getCocktail(arguments.get(1))};
-                    return new Response(OK_STATUS, null, cocktail );
+                    return new Response(OK_STATUS, null, List.of(storage.getCocktail(arguments.get(1))));
                 } catch (CocktailNotFoundException e) {
                     return new Response(ERROR_STATUS, "no such cocktail found", null);
                 }
@@ -59,7 +96,28 @@ public class CommandExecutor {
                 }
                 String ingredient = arguments.get(1);
                 Collection<Cocktail> cocktails = storage.getCocktailsWithIngredient(ingredient);
-                return new Response(OK_STATUS, null , cocktails.toArray(cocktails.toArray(new Cocktail[0])));
+                return new Response(OK_STATUS, null , page(cocktails, offset, limit));
+            } else if (getMethod.equals(GET_BY_INGREDIENTS)) {
+                if (arguments.size() < 2) {
+                    return new Response(ERROR_STATUS, "argument not passed to get by ingredients", null);
+                }
+                List<String> required = new ArrayList<>();
+                List<String> excluded = new ArrayList<>();
+                for (String ingredient : arguments.subList(1, arguments.size())) {
+                    if (ingredient.startsWith(EXCLUDED_PREFIX)) {
+                        excluded.add(ingredient.substring(EXCLUDED_PREFIX.length()));
+                    } else {
+                        required.add(ingredient);
+                    }
+                }
+                Collection<Cocktail> cocktails = storage.getCocktailsWithIngredients(required, excluded);
+                return new Response(OK_STATUS, null , page(cocktails, offset, limit));
+            } else if (getMethod.equals(GET_MADE_FROM)) {
+                if (arguments.size() < 2) {
+                    return new Response(ERROR_STATUS, "argument not passed to get made from", null);
+                }
+                Collection<Cocktail> cocktails = storage.getCocktailsMadeFrom(arguments.subList(1, arguments.size()));
+                return new Response(OK_STATUS, null , page(cocktails, offset, limit));
             }
 
         } else if (command.name().equals(CREATE)) {
@@ -86,4 +144,46 @@ public class CommandExecutor {
         }
         return new Response(ERROR_STATUS, "Unknown command", null);
     }
+
+    //a view of at most limit cocktails starting at offset, nothing is copied
+    private static Collection<Cocktail> page(Collection<Cocktail> cocktails, int offset, int limit) {
+        if (offset == 0 && limit == Integer.MAX_VALUE) {
+            return cocktails;
+        }
+        if (cocktails instanceof List<Cocktail> list) {
+            int from = Math.min(offset, list.size());
+            return list.subList(from, (int) Math.min((long) from + limit, list.size()));
+        }
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Cocktail> iterator() {
+                Iterator<Cocktail> iterator = cocktails.iterator();
+                for (int i = 0; i < offset && iterator.hasNext(); ++i) {
+                    iterator.next();
+                }
+                return new Iterator<>() {
+                    private int returned;
+
+                    @Override
+                    public boolean hasNext() {
+                        return returned < limit && iterator.hasNext();
+                    }
+
+                    @Override
+                    public Cocktail next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException("no more cocktails on this page");
+                        }
+                        ++returned;
+                        return iterator.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return Math.max(0, Math.min(limit, cocktails.size() - offset));
+            }
+        };
+    }
 }
@@ -0,0 +1,83 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server;
+
+import bg.sofia.uni.fmi.mjt.cocktail.server.response.ResponseStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+//attached to the selection key of a client, holds the requests read so far and the reply that is still being written
+//a request is a line, a read may end in the middle of one or hold several, only whole lines are handed out
+//a reply is encoded into the output buffer only as fast as the socket takes it,
+//so a client costs its two buffers however big its reply is, a cached reply is shared and not copied per client
+public class ClientConnection {
+    private static final int INPUT_BUFFER_SIZE = 1024;
+    //a create with many ingredients is the longest request, the input buffer doubles up to this
+    private static final int MAX_REQUEST_LENGTH = 64 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+    //kept in write mode, holds the bytes read that are not a whole line yet
+    private ByteBuffer input;
+    //kept in read mode, holds encoded bytes the socket has not taken yet
+    private final ByteBuffer output;
+    //null once the whole reply is in the output buffer
+    private ResponseStream response;
+
+    public ClientConnection() {
+        this.input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+        this.output = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE).flip();
+    }
+
+    //returns -1 once the client closed the connection
+    public int read(SocketChannel channel) throws IOException {
+        if (!input.hasRemaining()) {
+            if (input.capacity() >= MAX_REQUEST_LENGTH) {
+                throw new IOException("request is longer than " + MAX_REQUEST_LENGTH + " bytes");
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(input.capacity() * 2);
+            bigger.put(input.flip());
+            input = bigger;
+        }
+        return channel.read(input);
+    }
+
+    //the next whole request without its new line, null if none has fully arrived yet
+    public String nextRequest() {
+        for (int i = 0; i < input.position(); ++i) {
+            if (input.get(i) == '\n') {
+                String request = new String(input.array(), 0, i, StandardCharsets.UTF_8);
+                input.flip().position(i + 1);
+                input.compact();
+                if (input.position() == 0 && input.capacity() > INPUT_BUFFER_SIZE) {
+                    //a long request does not keep its buffer once it is handled
+                    input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+                }
+                return request;
+            }
+        }
+        return null;
+    }
+
+    public void startResponse(ResponseStream response) {
+        this.response = response;
+    }
+
+    //returns true once the whole reply is written, false if the socket is full
+    public boolean flush(SocketChannel channel) throws IOException {
+        while (true) {
+            channel.write(output);
+            if (output.hasRemaining()) {
+                return false;
+            }
+            if (response == null) {
+                return true;
+            }
+            output.clear();
+            if (response.writeTo(output)) {
+                response = null;
+            }
+            output.flip();
+        }
+    }
+}
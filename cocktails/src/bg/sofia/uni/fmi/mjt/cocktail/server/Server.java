@@ -1,27 +1,20 @@
 package bg.sofia.uni.fmi.mjt.cocktail.server;
 
-import bg.sofia.uni.fmi.mjt.cocktail.command.Command;
-import bg.sofia.uni.fmi.mjt.cocktail.command.CommandCreator;
 import bg.sofia.uni.fmi.mjt.cocktail.command.CommandExecutor;
-import bg.sofia.uni.fmi.mjt.cocktail.server.response.Response;
-import bg.sofia.uni.fmi.mjt.cocktail.server.storage.DefaultCocktailStorage;
-import com.google.gson.Gson;
+import bg.sofia.uni.fmi.mjt.cocktail.server.response.ResponseCache;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.IndexedCocktailStorage;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 
 public class Server {
-    private static final int BYTE_BUFFER_SIZE = 1024;
     private static final String HOST = "localhost";
-    private ByteBuffer buffer;
     private Selector selector;
     private boolean isServerWorking;
     private int port;
@@ -36,9 +29,9 @@ public class Server {
             selector = Selector.open();
             //server must be first set to a HOST and PORT, then must be made non blocking and registered to a selector
             configureServer(server, selector);
-            buffer = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
-            DefaultCocktailStorage storage = new DefaultCocktailStorage();
+            IndexedCocktailStorage storage = new IndexedCocktailStorage();
             CommandExecutor commandExecutor = new CommandExecutor(storage);
+            ResponseCache responseCache = new ResponseCache(storage, commandExecutor);
             this.isServerWorking = true;
 
             while (isServerWorking) {
@@ -52,22 +45,16 @@ public class Server {
                     Iterator<SelectionKey> selectionKeyIterator = selector.selectedKeys().iterator();
                     while (selectionKeyIterator.hasNext()) {
                         SelectionKey selectionKey = selectionKeyIterator.next();
-                        if (selectionKey.isAcceptable()) {
-                            // someone wants to connect to us
-                            ServerSocketChannel theServerChannel = (ServerSocketChannel) selectionKey.channel();
-                            accept(theServerChannel, selector);
-                        } else if ( selectionKey.isReadable()) {
-                            SocketChannel clientSocket = (SocketChannel) selectionKey.channel();
-                            String clientInput = readClientInput(clientSocket);
-                            if (clientInput != null) {
-                                Command command = CommandCreator.createCommand(clientInput);
-                                Response commandResponse = commandExecutor.handleCommand(command);
-                                Gson gson = new Gson();
-                                String jsonResponse = gson.toJson(commandResponse);
-                                writeToClientOutput(jsonResponse, clientSocket);
-                            }
-                        }
+                        //removed first, a key left in the selected set is reported again on every select
                         selectionKeyIterator.remove();
+                        try {
+                            handleKey(selectionKey, responseCache);
+                        } catch (IOException e) {
+                            //a client that reset its connection in the middle of a reply is dropped,
+                            //otherwise its key stays ready and the selector spins on it
+                            System.out.println("error processing client request");
+                            closeClient(selectionKey);
+                        }
                     }
 
                 } catch (IOException e) {
@@ -80,6 +67,39 @@ public class Server {
 
     }
 
+    private void handleKey(SelectionKey selectionKey, ResponseCache responseCache) throws IOException {
+        if (!selectionKey.isValid()) {
+            return;
+        }
+        if (selectionKey.isAcceptable()) {
+            // someone wants to connect to us
+            ServerSocketChannel theServerChannel = (ServerSocketChannel) selectionKey.channel();
+            accept(theServerChannel, selector);
+        } else if (selectionKey.isReadable()) {
+            SocketChannel clientSocket = (SocketChannel) selectionKey.channel();
+            ClientConnection connection = (ClientConnection) selectionKey.attachment();
+            if (connection.read(clientSocket) < 0) {
+                closeClient(selectionKey);
+                return;
+            }
+            writeToClientOutput(selectionKey, responseCache);
+        } else if (selectionKey.isWritable()) {
+            writeToClientOutput(selectionKey, responseCache);
+        }
+    }
+
+    //only ever drops a client, the key of the server channel is left alone
+    private void closeClient(SelectionKey selectionKey) {
+        if (selectionKey.channel() instanceof SocketChannel clientSocket) {
+            selectionKey.cancel();
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                System.out.println("error closing client connection");
+            }
+        }
+    }
+
     private void configureServer(ServerSocketChannel server, Selector selector) throws IOException {
         server.bind(new InetSocketAddress(HOST, port));
         server.configureBlocking(false);
@@ -93,29 +113,43 @@ public class Server {
         }
     }
 
-    private void accept(ServerSocketChannel server, Selector selector) throws IOException {
-        SocketChannel clientSocket = server.accept();
-        clientSocket.configureBlocking(false);
-        clientSocket.register(selector, SelectionKey.OP_READ);
-    }
-
-    void writeToClientOutput(String output, SocketChannel clientSocket) throws IOException {
-        buffer.clear();
-        buffer.put(output.getBytes());
-        buffer.flip();
-        clientSocket.write(buffer);
+    //a failed accept only loses that one client, the server's own key keeps accepting
+    private void accept(ServerSocketChannel server, Selector selector) {
+        SocketChannel clientSocket = null;
+        try {
+            clientSocket = server.accept();
+            if (clientSocket == null) {
+                return;
+            }
+            clientSocket.configureBlocking(false);
+            clientSocket.register(selector, SelectionKey.OP_READ, new ClientConnection());
+        } catch (IOException e) {
+            System.out.println("error accepting client connection");
+            if (clientSocket != null) {
+                try {
+                    clientSocket.close();
+                } catch (IOException suppressed) {
+                    System.out.println("error closing client connection");
+                }
+            }
+        }
     }
-    String readClientInput(SocketChannel clientSocket) throws IOException {
-        buffer.clear();
 
-        int readBytes = clientSocket.read(buffer);
-        if (readBytes < 0) {
-            clientSocket.close();
-            return null;
+    //answers the whole requests the client has sent one after another,
+    //whatever the socket does not take now is written once it is writable again,
+    //the client's next request is not read before its reply is out
+    void writeToClientOutput(SelectionKey selectionKey, ResponseCache responseCache) throws IOException {
+        SocketChannel clientSocket = (SocketChannel) selectionKey.channel();
+        ClientConnection connection = (ClientConnection) selectionKey.attachment();
+        while (connection.flush(clientSocket)) {
+            String clientInput = connection.nextRequest();
+            if (clientInput == null) {
+                selectionKey.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            //strip also drops the carriage return of a windows line end
+            connection.startResponse(responseCache.respond(clientInput.strip()));
         }
-        buffer.flip();
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes);
-        return new String(bytes, StandardCharsets.UTF_8);
+        selectionKey.interestOps(SelectionKey.OP_WRITE);
     }
 }
@@ -0,0 +1,23 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.response;
+
+import java.nio.ByteBuffer;
+
+//a whole reply that is already encoded
+public class BufferedResponseStream implements ResponseStream {
+    private final ByteBuffer bytes;
+
+    public BufferedResponseStream(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public boolean writeTo(ByteBuffer target) {
+        if (bytes.hasRemaining()) {
+            int count = Math.min(bytes.remaining(), target.remaining());
+            target.put(target.position(), bytes, bytes.position(), count);
+            target.position(target.position() + count);
+            bytes.position(bytes.position() + count);
+        }
+        return !bytes.hasRemaining();
+    }
+}
@@ -0,0 +1,74 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.response;
+
+import bg.sofia.uni.fmi.mjt.cocktail.server.Cocktail;
+import com.google.gson.Gson;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+//writes a response as the same JSON Gson makes of it, followed by a new line,
+//but one cocktail at a time, so no more than a single cocktail is ever encoded ahead of the socket
+public class JsonResponseStream implements ResponseStream {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Gson gson;
+    private final Response response;
+    //null until the header is out and once the last cocktail is
+    private Iterator<Cocktail> cocktails;
+    private boolean headerWritten;
+    private boolean firstCocktail;
+    private boolean done;
+    //the encoded piece that did not fit into the target yet
+    private ByteBuffer pending;
+
+    public JsonResponseStream(Gson gson, Response response) {
+        this.gson = gson;
+        this.response = response;
+        this.firstCocktail = true;
+        this.pending = ByteBuffer.wrap(EMPTY);
+    }
+
+    @Override
+    public boolean writeTo(ByteBuffer target) {
+        while (true) {
+            int count = Math.min(pending.remaining(), target.remaining());
+            target.put(target.position(), pending, pending.position(), count);
+            target.position(target.position() + count);
+            pending.position(pending.position() + count);
+            if (pending.hasRemaining()) {
+                return false;
+            }
+            if (done) {
+                return true;
+            }
+            pending = ByteBuffer.wrap(nextPiece().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private String nextPiece() {
+        if (!headerWritten) {
+            headerWritten = true;
+            if (response.cocktails() == null) {
+                done = true;
+                return gson.toJson(response) + "\n";
+            }
+            cocktails = response.cocktails().iterator();
+            StringBuilder header = new StringBuilder("{\"status\":").append(gson.toJson(response.status()));
+            if (response.errorMessage() != null) {
+                header.append(",\"errorMessage\":").append(gson.toJson(response.errorMessage()));
+            }
+            return header.append(",\"cocktails\":[").toString();
+        }
+        if (cocktails.hasNext()) {
+            String cocktail = gson.toJson(cocktails.next());
+            if (firstCocktail) {
+                firstCocktail = false;
+                return cocktail;
+            }
+            return "," + cocktail;
+        }
+        done = true;
+        return "]}\n";
+    }
+}
@@ -2,5 +2,7 @@ package bg.sofia.uni.fmi.mjt.cocktail.server.response;
 
 import bg.sofia.uni.fmi.mjt.cocktail.server.Cocktail;
 
-public record Response(String status, String errorMessage, Cocktail[] cocktails) {
+import java.util.Collection;
+
+public record Response(String status, String errorMessage, Collection<Cocktail> cocktails) {
 }
@@ -0,0 +1,109 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.response;
+
+import bg.sofia.uni.fmi.mjt.cocktail.command.Command;
+import bg.sofia.uni.fmi.mjt.cocktail.command.CommandCreator;
+import bg.sofia.uni.fmi.mjt.cocktail.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.CocktailStorage;
+import com.google.gson.Gson;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//keeps the encoded replies to get commands until the storage changes,
+//so a repeated read is a map lookup instead of running the query and serializing it again
+//the cache holds at most MAX_TOTAL_BYTES, the least recently used replies go first,
+//a reply longer than MAX_ENTRY_BYTES is only remembered as too long and streamed straight to the client from then on
+public class ResponseCache {
+    private static final String GET = "get";
+    private static final int INITIAL_REPLY_SIZE = 4 * 1024;
+    //by-name takes any name and every offset of a page is a key of its own, this is what bounds them
+    private static final long MAX_TOTAL_BYTES = 16 * 1024 * 1024;
+    //half of the cache, a get all of a catalog of tens of thousands of cocktails still fits next to the pages of it
+    private static final int MAX_ENTRY_BYTES = (int) (MAX_TOTAL_BYTES / 2);
+
+    private final CocktailStorage storage;
+    private final CommandExecutor commandExecutor;
+    //reflection is set up once per Gson, not once per reply
+    private final Gson gson;
+    //in access order, the eldest entry is the least recently used one, guarded by this
+    private final LinkedHashMap<String, CachedResponse> responses;
+    private long totalBytes;
+
+    //bytes is null for a reply longer than MAX_ENTRY_BYTES
+    private record CachedResponse(long version, ByteBuffer bytes) {
+        //what the entry is charged, the key of a reply that is too long still takes some room
+        long size(String clientInput) {
+            return bytes == null ? clientInput.length() : bytes.capacity();
+        }
+    }
+
+    public ResponseCache(CocktailStorage storage, CommandExecutor commandExecutor) {
+        this.storage = storage;
+        this.commandExecutor = commandExecutor;
+        this.gson = new Gson();
+        this.responses = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    //the reply to the client input as new line terminated UTF-8 JSON
+    public ResponseStream respond(String clientInput) {
+        Command command = CommandCreator.createCommand(clientInput);
+        if (!GET.equals(command.name())) {
+            return new JsonResponseStream(gson, commandExecutor.handleCommand(command));
+        }
+
+        //taken before the query runs, a cocktail created meanwhile only makes the entry look older than it is
+        long version = storage.getVersion();
+        CachedResponse cached = lookup(clientInput, version);
+        if (cached != null && cached.bytes() != null) {
+            return new BufferedResponseStream(cached.bytes().duplicate());
+        }
+
+        Response response = commandExecutor.handleCommand(command);
+        if (cached != null) {
+            //known to be too long at this version, encoding it again would only be thrown away again
+            return new JsonResponseStream(gson, response);
+        }
+        ResponseStream stream = new JsonResponseStream(gson, response);
+        ByteBuffer bytes = ByteBuffer.allocate(INITIAL_REPLY_SIZE);
+        while (!stream.writeTo(bytes)) {
+            if (bytes.capacity() >= MAX_ENTRY_BYTES) {
+                store(clientInput, new CachedResponse(version, null));
+                //the response is a view of the storage, streaming it anew costs no query
+                return new JsonResponseStream(gson, response);
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(bytes.capacity() * 2, MAX_ENTRY_BYTES));
+            bigger.put(bytes.flip());
+            bytes = bigger;
+        }
+        //copied to its exact size, the cache is charged for what it really holds
+        ByteBuffer reply = ByteBuffer.allocate(bytes.flip().remaining()).put(bytes).flip().asReadOnlyBuffer();
+        store(clientInput, new CachedResponse(version, reply));
+        return new BufferedResponseStream(reply.duplicate());
+    }
+
+    private synchronized CachedResponse lookup(String clientInput, long version) {
+        CachedResponse cached = responses.get(clientInput);
+        if (cached != null && cached.version() != version) {
+            responses.remove(clientInput);
+            totalBytes -= cached.size(clientInput);
+            return null;
+        }
+        return cached;
+    }
+
+    private synchronized void store(String clientInput, CachedResponse response) {
+        CachedResponse previous = responses.put(clientInput, response);
+        totalBytes += response.size(clientInput);
+        if (previous != null) {
+            totalBytes -= previous.size(clientInput);
+        }
+        Iterator<Map.Entry<String, CachedResponse>> eldest = responses.entrySet().iterator();
+        while (totalBytes > MAX_TOTAL_BYTES && eldest.hasNext()) {
+            Map.Entry<String, CachedResponse> entry = eldest.next();
+            totalBytes -= entry.getValue().size(entry.getKey());
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.response;
+
+import java.nio.ByteBuffer;
+
+//a reply that is encoded bit by bit into whatever room the connection's output buffer has
+public interface ResponseStream {
+    //returns true once the whole reply is written
+    boolean writeTo(ByteBuffer target);
+}
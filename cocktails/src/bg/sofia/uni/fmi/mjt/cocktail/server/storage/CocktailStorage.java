@@ -33,6 +33,27 @@ public interface CocktailStorage {
      */
     Collection<Cocktail> getCocktailsWithIngredient(String ingredientName);
 
+    /**
+     * Retrieves all cocktail recipes that have every one of the required ingredients and none of the excluded ones
+     *
+     * @param requiredIngredients names of the ingredients a cocktail must have (case-insensitive).
+     * If empty, every cocktail without an excluded ingredient matches.
+     * @param excludedIngredients names of the ingredients a cocktail must not have (case-insensitive)
+     * @return all matching cocktail recipes from the storage, in undefined order.
+     * If no cocktail matches, returns an empty collection.
+     */
+    Collection<Cocktail> getCocktailsWithIngredients(Collection<String> requiredIngredients,
+                                                     Collection<String> excludedIngredients);
+
+    /**
+     * Retrieves all cocktail recipes that can be made with the given ingredients alone
+     *
+     * @param availableIngredients names of the ingredients at hand (case-insensitive)
+     * @return all cocktail recipes from the storage whose ingredients are all available, in undefined order.
+     * If no cocktail can be made, returns an empty collection.
+     */
+    Collection<Cocktail> getCocktailsMadeFrom(Collection<String> availableIngredients);
+
     /**
      * Retrieves a cocktail recipe with the given name
      *
@@ -42,4 +63,12 @@ public interface CocktailStorage {
      */
     Cocktail getCocktail(String name) throws CocktailNotFoundException;
 
+    /**
+     * Tells whether the storage has changed since an earlier call
+     *
+     * @return a number that grows with every cocktail created.
+     * The same value from two calls means no cocktail was created in between.
+     */
+    long getVersion();
+
 }
\ No newline at end of file
@@ -11,6 +11,7 @@ import java.util.Set;
 
 public class DefaultCocktailStorage implements CocktailStorage {
     private Set<Cocktail> cocktails;
+    private long version;
 
     public DefaultCocktailStorage() {
         this.cocktails = new HashSet<>();
@@ -22,11 +23,13 @@ public class DefaultCocktailStorage implements CocktailStorage {
             throw new CocktailAlreadyExistsException("recipe for this cocktail already exists");
         }
         cocktails.add(cocktail);
+        ++version;
     }
 
     @Override
     public synchronized Set<Cocktail> getCocktails() {
-        return cocktails;
+        //a copy, callers go through it after the lock is released
+        return Set.copyOf(cocktails);
     }
 
     @Override
@@ -36,6 +39,24 @@ public class DefaultCocktailStorage implements CocktailStorage {
                 .toList();
     }
 
+    @Override
+    public synchronized Collection<Cocktail> getCocktailsWithIngredients(Collection<String> requiredIngredients,
+                                                                      Collection<String> excludedIngredients) {
+        return cocktails.stream()
+                .filter(x -> requiredIngredients.stream().allMatch(r -> hasIngredient(x, r)))
+                .filter(x -> excludedIngredients.stream().noneMatch(e -> hasIngredient(x, e)))
+                .toList();
+    }
+
+    @Override
+    public synchronized Collection<Cocktail> getCocktailsMadeFrom(Collection<String> availableIngredients) {
+        return cocktails.stream()
+                .filter(x -> !x.ingredients().isEmpty())
+                .filter(x -> x.ingredients().stream()
+                        .allMatch(i -> availableIngredients.stream().anyMatch(a -> a.equalsIgnoreCase(i.name()))))
+                .toList();
+    }
+
     @Override
     public synchronized Cocktail getCocktail(String name) throws CocktailNotFoundException {
         Optional<Cocktail> desiredCocktail = cocktails.stream().filter(x -> x.name().equals(name)).findFirst();
@@ -44,4 +65,13 @@ public class DefaultCocktailStorage implements CocktailStorage {
         }
         return desiredCocktail.get();
     }
+
+    @Override
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    private static boolean hasIngredient(Cocktail cocktail, String ingredientName) {
+        return cocktail.ingredients().stream().anyMatch(i -> i.name().equalsIgnoreCase(ingredientName));
+    }
 }
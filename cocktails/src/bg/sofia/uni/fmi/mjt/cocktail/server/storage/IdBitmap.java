@@ -0,0 +1,391 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.storage;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+//an immutable compressed set of non-negative ids
+//ids are split into chunks of 65536, a chunk with few ids keeps their low 16 bits sorted in a char[],
+//a fuller one keeps a bitmap of 1024 words, and set operations go word by word wherever both sides are bitmaps
+final class IdBitmap {
+    static final IdBitmap EMPTY = new IdBitmap(new Chunk[0]);
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int LOW_MASK = 0xFFFF;
+    private static final int WORDS_PER_CHUNK = (1 << CHUNK_SHIFT) / Long.SIZE;
+    //past this many ids a sorted array takes more room than the bitmap
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    //indexed by the high bits of the ids, null for chunks without ids
+    private final Chunk[] chunks;
+
+    private IdBitmap(Chunk[] chunks) {
+        this.chunks = chunks;
+    }
+
+    //the ids from 0 up to count, not included
+    static IdBitmap range(int count) {
+        Chunk[] chunks = new Chunk[chunkCount(count)];
+        for (int i = 0; i < chunks.length; ++i) {
+            int idsInChunk = Math.min(count - (i << CHUNK_SHIFT), 1 << CHUNK_SHIFT);
+            long[] words = new long[WORDS_PER_CHUNK];
+            Arrays.fill(words, 0, idsInChunk / Long.SIZE, -1L);
+            if (idsInChunk % Long.SIZE != 0) {
+                words[idsInChunk / Long.SIZE] = (1L << (idsInChunk % Long.SIZE)) - 1;
+            }
+            chunks[i] = Chunk.of(words, idsInChunk);
+        }
+        return new IdBitmap(chunks);
+    }
+
+    //the first count ids, they must be sorted and distinct
+    static IdBitmap ofSorted(int[] ids, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        Chunk[] chunks = new Chunk[(ids[count - 1] >>> CHUNK_SHIFT) + 1];
+        for (int start = 0; start < count; ) {
+            int chunk = ids[start] >>> CHUNK_SHIFT;
+            int end = start;
+            while (end < count && ids[end] >>> CHUNK_SHIFT == chunk) {
+                ++end;
+            }
+            char[] values = new char[end - start];
+            for (int i = start; i < end; ++i) {
+                values[i - start] = (char) (ids[i] & LOW_MASK);
+            }
+            chunks[chunk] = Chunk.ofSorted(values);
+            start = end;
+        }
+        return new IdBitmap(chunks);
+    }
+
+    //id must be greater than every id already in the bitmap, only the chunk it lands in is copied
+    IdBitmap append(int id) {
+        int chunk = id >>> CHUNK_SHIFT;
+        Chunk[] result = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+        result[chunk] = result[chunk] == null ? Chunk.single((char) (id & LOW_MASK)) :
+                result[chunk].with((char) (id & LOW_MASK));
+        return new IdBitmap(result);
+    }
+
+    IdBitmap and(IdBitmap other) {
+        Chunk[] result = new Chunk[Math.min(chunks.length, other.chunks.length)];
+        for (int i = 0; i < result.length; ++i) {
+            if (chunks[i] != null && other.chunks[i] != null) {
+                result[i] = chunks[i].and(other.chunks[i]);
+            }
+        }
+        return new IdBitmap(result);
+    }
+
+    IdBitmap andNot(IdBitmap other) {
+        Chunk[] result = chunks.clone();
+        for (int i = 0; i < Math.min(result.length, other.chunks.length); ++i) {
+            if (result[i] != null && other.chunks[i] != null) {
+                result[i] = result[i].andNot(other.chunks[i]);
+            }
+        }
+        return new IdBitmap(result);
+    }
+
+    IdBitmap or(IdBitmap other) {
+        Chunk[] result = Arrays.copyOf(chunks, Math.max(chunks.length, other.chunks.length));
+        for (int i = 0; i < other.chunks.length; ++i) {
+            if (other.chunks[i] != null) {
+                result[i] = result[i] == null ? other.chunks[i] : result[i].or(other.chunks[i]);
+            }
+        }
+        return new IdBitmap(result);
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk != null) {
+                cardinality += chunk.cardinality;
+            }
+        }
+        return cardinality;
+    }
+
+    //in increasing order
+    IdIterator iterator() {
+        return new IdIterator();
+    }
+
+    //the elements of byId at the ids of this bitmap, without copying them out
+    <T> Collection<T> select(List<T> byId) {
+        return new AbstractCollection<>() {
+            private int size = -1;
+
+            @Override
+            public Iterator<T> iterator() {
+                IdIterator ids = new IdIterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return ids.hasNext();
+                    }
+
+                    @Override
+                    public T next() {
+                        return byId.get(ids.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                if (size < 0) {
+                    size = cardinality();
+                }
+                return size;
+            }
+        };
+    }
+
+    private static int chunkCount(int ids) {
+        return (ids + LOW_MASK) >>> CHUNK_SHIFT;
+    }
+
+    final class IdIterator {
+        private int chunk = -1;
+        private int index;
+        private int nextId = -1;
+
+        boolean hasNext() {
+            if (nextId < 0) {
+                advance();
+            }
+            return nextId >= 0;
+        }
+
+        int next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more ids");
+            }
+            int id = nextId;
+            nextId = -1;
+            return id;
+        }
+
+        //index is the next array slot or the next bit to look at in the current chunk
+        private void advance() {
+            while (true) {
+                if (chunk >= 0 && chunks[chunk] != null) {
+                    int low = chunks[chunk].nextLow(index);
+                    if (low >= 0) {
+                        index = chunks[chunk].values != null ? index + 1 : low + 1;
+                        nextId = (chunk << CHUNK_SHIFT) | low;
+                        return;
+                    }
+                }
+                if (++chunk >= chunks.length) {
+                    return;
+                }
+                index = 0;
+            }
+        }
+    }
+
+    //exactly one of values and words is set, a chunk always holds at least one id
+    private static final class Chunk {
+        private final char[] values;
+        private final long[] words;
+        private final int cardinality;
+
+        private Chunk(char[] values, long[] words, int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static Chunk single(char low) {
+            return new Chunk(new char[]{low}, null, 1);
+        }
+
+        //null if no id is left, an array if the ids fit one
+        static Chunk of(long[] words, int cardinality) {
+            if (cardinality == 0) {
+                return null;
+            }
+            if (cardinality > MAX_ARRAY_CARDINALITY) {
+                return new Chunk(null, words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < words.length; ++i) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    values[count++] = (char) (i * Long.SIZE + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new Chunk(values, null, cardinality);
+        }
+
+        //the low bits in increasing order, a bitmap if there are too many for an array
+        static Chunk ofSorted(char[] values) {
+            if (values.length <= MAX_ARRAY_CARDINALITY) {
+                return new Chunk(values, null, values.length);
+            }
+            long[] words = new long[WORDS_PER_CHUNK];
+            for (char low : values) {
+                words[low >>> 6] |= 1L << low;
+            }
+            return new Chunk(null, words, values.length);
+        }
+
+        static Chunk of(char[] values, int cardinality) {
+            return cardinality == 0 ? null :
+                    new Chunk(cardinality == values.length ? values : Arrays.copyOf(values, cardinality), null, cardinality);
+        }
+
+        //low is greater than every low bits already in the chunk
+        Chunk with(char low) {
+            if (values != null && cardinality < MAX_ARRAY_CARDINALITY) {
+                char[] result = Arrays.copyOf(values, cardinality + 1);
+                result[cardinality] = low;
+                return new Chunk(result, null, cardinality + 1);
+            }
+            long[] result = toWords();
+            result[low >>> 6] |= 1L << low;
+            return new Chunk(null, result, cardinality + 1);
+        }
+
+        boolean contains(char low) {
+            if (values != null) {
+                return Arrays.binarySearch(values, low) >= 0;
+            }
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        //for an array the low bits at position from on, for a bitmap the first set bit from from on, -1 if none
+        int nextLow(int from) {
+            if (values != null) {
+                return from < cardinality ? values[from] : -1;
+            }
+            for (int i = from >>> 6; i < words.length; ++i) {
+                long word = i == from >>> 6 ? words[i] & (-1L << from) : words[i];
+                if (word != 0) {
+                    return i * Long.SIZE + Long.numberOfTrailingZeros(word);
+                }
+            }
+            return -1;
+        }
+
+        Chunk and(Chunk other) {
+            if (words != null && other.words != null) {
+                long[] result = new long[WORDS_PER_CHUNK];
+                int cardinality = 0;
+                for (int i = 0; i < WORDS_PER_CHUNK; ++i) {
+                    result[i] = words[i] & other.words[i];
+                    cardinality += Long.bitCount(result[i]);
+                }
+                return of(result, cardinality);
+            }
+            if (values != null && other.values != null) {
+                return intersect(other);
+            }
+            //walk the array side and probe the bitmap
+            Chunk array = values != null ? this : other;
+            Chunk probed = array == this ? other : this;
+            char[] result = new char[array.cardinality];
+            int count = 0;
+            for (int i = 0; i < array.cardinality; ++i) {
+                if (probed.contains(array.values[i])) {
+                    result[count++] = array.values[i];
+                }
+            }
+            return of(result, count);
+        }
+
+        //both sides are arrays, merged like two sorted lists
+        private Chunk intersect(Chunk other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < other.cardinality) {
+                if (values[i] < other.values[j]) {
+                    ++i;
+                } else if (values[i] > other.values[j]) {
+                    ++j;
+                } else {
+                    result[count++] = values[i];
+                    ++i;
+                    ++j;
+                }
+            }
+            return of(result, count);
+        }
+
+        Chunk andNot(Chunk other) {
+            if (values != null) {
+                char[] result = new char[cardinality];
+                int count = 0;
+                int j = 0;
+                for (int i = 0; i < cardinality; ++i) {
+                    if (other.values != null) {
+                        while (j < other.cardinality && other.values[j] < values[i]) {
+                            ++j;
+                        }
+                        if (j < other.cardinality && other.values[j] == values[i]) {
+                            continue;
+                        }
+                    } else if (other.contains(values[i])) {
+                        continue;
+                    }
+                    result[count++] = values[i];
+                }
+                return of(result, count);
+            }
+            long[] result = words.clone();
+            if (other.words != null) {
+                for (int i = 0; i < WORDS_PER_CHUNK; ++i) {
+                    result[i] &= ~other.words[i];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; ++i) {
+                    result[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+                }
+            }
+            return of(result, bitCount(result));
+        }
+
+        Chunk or(Chunk other) {
+            long[] result = toWords();
+            if (other.words != null) {
+                for (int i = 0; i < WORDS_PER_CHUNK; ++i) {
+                    result[i] |= other.words[i];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; ++i) {
+                    result[other.values[i] >>> 6] |= 1L << other.values[i];
+                }
+            }
+            return of(result, bitCount(result));
+        }
+
+        private long[] toWords() {
+            if (words != null) {
+                return words.clone();
+            }
+            long[] result = new long[WORDS_PER_CHUNK];
+            for (int i = 0; i < cardinality; ++i) {
+                result[values[i] >>> 6] |= 1L << values[i];
+            }
+            return result;
+        }
+
+        private static int bitCount(long[] words) {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+    }
+}
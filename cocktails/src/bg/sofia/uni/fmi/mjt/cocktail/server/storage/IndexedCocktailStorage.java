@@ -0,0 +1,149 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.storage;
+
+import bg.sofia.uni.fmi.mjt.cocktail.server.Cocktail;
+import bg.sofia.uni.fmi.mjt.cocktail.server.Ingredient;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.exceptions.CocktailAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.exceptions.CocktailNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//reads never block: they only look up concurrent maps and hand out immutable views
+//every cocktail gets the next id, its index in allCocktails, and every ingredient a bitmap of the ids that use it,
+//so ingredient queries are set operations over the bitmaps
+//creates are serialized and publish a cocktail by id first, then in the bitmaps and by name last,
+//so a reader that takes the bitmaps before the lists by id always finds every id in them
+public class IndexedCocktailStorage implements CocktailStorage {
+    //pantry queries usually match a handful of cocktails
+    private static final int INITIAL_MATCHES = 16;
+
+    //keys are lower case since names and ingredients are looked up case-insensitively
+    private final Map<String, Cocktail> cocktailsByName;
+    private final Map<String, IdBitmap> cocktailsByIngredient;
+    private volatile Postings<Cocktail> allCocktails;
+    //how many different ingredients every cocktail has by id
+    private volatile Postings<Integer> ingredientCountById;
+    private volatile long version;
+
+    public IndexedCocktailStorage() {
+        this.cocktailsByName = new ConcurrentHashMap<>();
+        this.cocktailsByIngredient = new ConcurrentHashMap<>();
+        this.allCocktails = Postings.empty();
+        this.ingredientCountById = Postings.empty();
+    }
+
+    @Override
+    public synchronized void createCocktail(Cocktail cocktail) throws CocktailAlreadyExistsException {
+        String nameKey = key(cocktail.name());
+        if (cocktailsByName.containsKey(nameKey)) {
+            throw new CocktailAlreadyExistsException("recipe for this cocktail already exists");
+        }
+        //two ingredients of a cocktail may differ only by case
+        Set<String> ingredientKeys = new HashSet<>();
+        for (Ingredient ingredient : cocktail.ingredients()) {
+            ingredientKeys.add(key(ingredient.name()));
+        }
+        int id = allCocktails.size();
+        ingredientCountById = ingredientCountById.append(ingredientKeys.size());
+        allCocktails = allCocktails.append(cocktail);
+        for (String ingredientKey : ingredientKeys) {
+            cocktailsByIngredient.put(ingredientKey,
+                    cocktailsByIngredient.getOrDefault(ingredientKey, IdBitmap.EMPTY).append(id));
+        }
+        cocktailsByName.put(nameKey, cocktail);
+        //bumped last, whoever sees the new version also sees the cocktail everywhere
+        ++version;
+    }
+
+    @Override
+    public Collection<Cocktail> getCocktails() {
+        return allCocktails;
+    }
+
+    @Override
+    public Collection<Cocktail> getCocktailsWithIngredient(String ingredientName) {
+        IdBitmap cocktails = bitmapOf(ingredientName);
+        return cocktails.select(allCocktails);
+    }
+
+    @Override
+    public Collection<Cocktail> getCocktailsWithIngredients(Collection<String> requiredIngredients,
+                                                            Collection<String> excludedIngredients) {
+        List<IdBitmap> required = new ArrayList<>(requiredIngredients.size());
+        for (String ingredientName : requiredIngredients) {
+            required.add(bitmapOf(ingredientName));
+        }
+        Postings<Cocktail> cocktails = allCocktails;
+        //starting from the rarest ingredient keeps every intermediate result small
+        required.sort(Comparator.comparingInt(IdBitmap::cardinality));
+        IdBitmap matches = required.isEmpty() ? IdBitmap.range(cocktails.size()) : required.get(0);
+        for (int i = 1; i < required.size(); ++i) {
+            matches = matches.and(required.get(i));
+        }
+        for (String ingredientName : excludedIngredients) {
+            matches = matches.andNot(bitmapOf(ingredientName));
+        }
+        return matches.select(cocktails);
+    }
+
+    @Override
+    public Collection<Cocktail> getCocktailsMadeFrom(Collection<String> availableIngredients) {
+        Set<String> available = new HashSet<>();
+        List<IdBitmap> pantry = new ArrayList<>(availableIngredients.size());
+        for (String ingredientName : availableIngredients) {
+            if (available.add(key(ingredientName))) {
+                pantry.add(bitmapOf(ingredientName));
+            }
+        }
+        Postings<Integer> ingredientCounts = ingredientCountById;
+        Postings<Cocktail> cocktails = allCocktails;
+        //a cocktail qualifies once as many of the pantry's bitmaps hold it as it has ingredients
+        int[] found = new int[cocktails.size()];
+        int[] matches = new int[Math.min(cocktails.size(), INITIAL_MATCHES)];
+        int matchCount = 0;
+        for (IdBitmap cocktailsWithIngredient : pantry) {
+            IdBitmap.IdIterator ids = cocktailsWithIngredient.iterator();
+            while (ids.hasNext()) {
+                int id = ids.next();
+                if (++found[id] == ingredientCounts.get(id)) {
+                    if (matchCount == matches.length) {
+                        matches = Arrays.copyOf(matches, Math.min(cocktails.size(), matches.length * 2));
+                    }
+                    matches[matchCount++] = id;
+                }
+            }
+        }
+        Arrays.sort(matches, 0, matchCount);
+        return IdBitmap.ofSorted(matches, matchCount).select(cocktails);
+    }
+
+    @Override
+    public Cocktail getCocktail(String name) throws CocktailNotFoundException {
+        Cocktail cocktail = cocktailsByName.get(key(name));
+        if (cocktail == null) {
+            throw new CocktailNotFoundException("no such cocktail found");
+        }
+        return cocktail;
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    private IdBitmap bitmapOf(String ingredientName) {
+        return cocktailsByIngredient.getOrDefault(key(ingredientName), IdBitmap.EMPTY);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,50 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.storage;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+//an immutable list that is cheap to extend
+//a longer list shares the array of the one it was made from, which only ever reads the slots below its own size,
+//so append must only be called on the newest list and by one thread at a time
+final class Postings<T> extends AbstractList<T> implements RandomAccess {
+    private static final Postings<?> EMPTY = new Postings<>(new Object[0], 0);
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final Object[] elements;
+    private final int size;
+
+    private Postings(Object[] elements, int size) {
+        this.elements = elements;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Postings<T> empty() {
+        return (Postings<T>) EMPTY;
+    }
+
+    Postings<T> append(T element) {
+        Object[] target = elements;
+        if (size == target.length) {
+            target = Arrays.copyOf(elements, Math.max(INITIAL_CAPACITY, size * 2));
+        }
+        target[size] = element;
+        return new Postings<>(target, size + 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " is outside of " + size + " elements");
+        }
+        return (T) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
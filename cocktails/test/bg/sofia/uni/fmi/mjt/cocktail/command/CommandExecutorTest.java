@@ -0,0 +1,122 @@
+package bg.sofia.uni.fmi.mjt.cocktail.command;
+
+import bg.sofia.uni.fmi.mjt.cocktail.server.Cocktail;
+import bg.sofia.uni.fmi.mjt.cocktail.server.Ingredient;
+import bg.sofia.uni.fmi.mjt.cocktail.server.response.Response;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.CocktailStorage;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.IndexedCocktailStorage;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.exceptions.CocktailAlreadyExistsException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandExecutorTest {
+    private static final int COCKTAILS = 10;
+
+    private final CocktailStorage storage = new IndexedCocktailStorage();
+    private final CommandExecutor executor = new CommandExecutor(storage);
+
+    @BeforeEach
+    void setUp() throws CocktailAlreadyExistsException {
+        for (int i = 0; i < COCKTAILS; ++i) {
+            storage.createCocktail(new Cocktail("cocktail " + i, Set.of(new Ingredient("gin", "50ml"))));
+        }
+    }
+
+    @Test
+    void testPageOfAllCocktails() {
+        Response response = run("get all limit=3 offset=4");
+        assertEquals("OK", response.status(), "a page must be returned");
+        assertEquals(List.of("cocktail 4", "cocktail 5", "cocktail 6"), names(response.cocktails()),
+                "the page must start at the offset and hold at most limit cocktails");
+        assertEquals(3, response.cocktails().size(), "the size must be the page's");
+    }
+
+    @Test
+    void testPageOfAQueryView() {
+        //the cocktails with an ingredient are a view over a bitmap, not a list
+        Response response = run("get by-ingredient gin offset=8 limit=5");
+        assertEquals(List.of("cocktail 8", "cocktail 9"), names(response.cocktails()),
+                "a page cut short by the end must hold what is left");
+        assertEquals(2, response.cocktails().size(), "the size must count only what is left");
+
+        Response middle = run("get by-ingredient gin offset=2 limit=3");
+        assertEquals(List.of("cocktail 2", "cocktail 3", "cocktail 4"), names(middle.cocktails()),
+                "the page must start at the offset");
+        assertEquals(3, middle.cocktails().size(), "the size must be the limit");
+    }
+
+    @Test
+    void testOffsetPastTheEndGivesAnEmptyPage() {
+        for (String query : List.of("get all offset=100", "get by-ingredient gin offset=100",
+                "get all offset=" + Integer.MAX_VALUE + " limit=" + Integer.MAX_VALUE)) {
+            Response response = run(query);
+            assertEquals("OK", response.status(), "an offset past the end is not an error for " + query);
+            assertTrue(response.cocktails().isEmpty(), "the page must be empty for " + query);
+            assertEquals(0, response.cocktails().size(), "the page must have no size for " + query);
+        }
+    }
+
+    @Test
+    void testZeroLimitGivesAnEmptyPage() {
+        Response response = run("get by-ingredient gin limit=0");
+        assertTrue(response.cocktails().isEmpty(), "a limit of zero must give no cocktails");
+        assertFalse(response.cocktails().iterator().hasNext(), "a limit of zero must iterate nothing");
+    }
+
+    @Test
+    void testNegativeLimitOrOffsetIsRejected() {
+        for (String query : List.of("get all limit=-1", "get all offset=-5", "get by-ingredient gin limit=-1")) {
+            Response response = run(query);
+            assertEquals("ERROR", response.status(), "a negative value must be rejected for " + query);
+            assertEquals("limit and offset cannot be negative", response.errorMessage(),
+                    "the error must name the negative value for " + query);
+        }
+    }
+
+    @Test
+    void testNonNumericLimitOrOffsetIsRejected() {
+        for (String query : List.of("get all limit=ten", "get all offset=", "get all limit=1.5",
+                "get all limit=99999999999")) {
+            Response response = run(query);
+            assertEquals("ERROR", response.status(), "a value that is not an int must be rejected for " + query);
+            assertEquals("limit and offset must be numbers", response.errorMessage(),
+                    "the error must ask for numbers for " + query);
+        }
+    }
+
+    @Test
+    void testLimitOrOffsetWithoutValueIsRejected() {
+        for (String query : List.of("get all limit 5", "get by-ingredient gin offset", "get limit")) {
+            Response response = run(query);
+            assertEquals("ERROR", response.status(), "a missing = must be rejected for " + query);
+            assertEquals("limit and offset need a value, as in limit=50", response.errorMessage(),
+                    "the error must show the right form for " + query);
+        }
+    }
+
+    @Test
+    void testPagingAloneIsNotAQuery() {
+        Response response = run("get limit=5");
+        assertEquals("ERROR", response.status(), "a get with nothing but paging must be rejected");
+        assertEquals("get command needs parameters", response.errorMessage(), "the error must ask for a query");
+    }
+
+    private Response run(String input) {
+        return executor.handleCommand(CommandCreator.createCommand(input));
+    }
+
+    private static List<String> names(Collection<Cocktail> cocktails) {
+        List<String> names = new ArrayList<>();
+        for (Cocktail cocktail : cocktails) {
+            names.add(cocktail.name());
+        }
+        return names;
+    }
+}
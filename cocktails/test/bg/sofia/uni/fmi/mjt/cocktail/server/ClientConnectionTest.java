@@ -0,0 +1,92 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientConnectionTest {
+    private SocketChannel client;
+    private SocketChannel server;
+    private final ClientConnection connection = new ClientConnection();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client = SocketChannel.open(listener.getLocalAddress());
+            server = listener.accept();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void testRequestSplitAcrossReads() throws IOException {
+        send("get by-ingr");
+        assertNull(connection.nextRequest(), "half a request must not be handed out");
+        send("edient gin\n");
+        assertEquals("get by-ingredient gin", connection.nextRequest(), "the two halves must make one request");
+        assertNull(connection.nextRequest(), "nothing must be left after the request");
+    }
+
+    @Test
+    void testTwoRequestsInOneRead() throws IOException {
+        send("get all\nget by-name mojito\nget");
+        assertEquals("get all", connection.nextRequest(), "the first request must come first");
+        assertEquals("get by-name mojito", connection.nextRequest(), "the second request must follow");
+        assertNull(connection.nextRequest(), "the start of a third request must wait for its new line");
+        send(" all\n");
+        assertEquals("get all", connection.nextRequest(), "the third request must be completed by the next read");
+    }
+
+    @Test
+    void testLongRequestGrowsTheBuffer() throws IOException {
+        String request = "create long " + "ingredient=1ml ".repeat(1000);
+        send(request + "\nget all\n");
+        assertEquals(request, connection.nextRequest(), "a request longer than the buffer must arrive whole");
+        assertEquals("get all", connection.nextRequest(), "the request after a long one must not be lost");
+    }
+
+    @Test
+    void testTooLongRequestIsRejected() throws IOException {
+        ByteBuffer request = ByteBuffer.wrap("x".repeat(128 * 1024).getBytes(StandardCharsets.UTF_8));
+        //the socket may not take it all before the other side reads
+        client.configureBlocking(false);
+        assertThrows(IOException.class, () -> {
+            while (true) {
+                client.write(request);
+                connection.read(server);
+            }
+        }, "a request longer than the limit must fail the connection");
+    }
+
+    @Test
+    void testClosedClientIsReported() throws IOException {
+        client.close();
+        assertEquals(-1, connection.read(server), "a closed client must read as -1");
+    }
+
+    //writes the bytes and reads until all of them are in the connection
+    private void send(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        client.write(ByteBuffer.wrap(bytes));
+        int read = 0;
+        while (read < bytes.length) {
+            read += connection.read(server);
+        }
+    }
+}
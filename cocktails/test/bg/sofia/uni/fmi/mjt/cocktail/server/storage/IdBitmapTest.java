@@ -0,0 +1,168 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdBitmapTest {
+    private static final int CHUNK_SIZE = 1 << 16;
+    //past this many ids in a chunk it turns from an array into a bitmap
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    @Test
+    void testIterationCrossesChunkBoundaries() {
+        int[] ids = {0, CHUNK_SIZE - 1, CHUNK_SIZE, 2 * CHUNK_SIZE - 1, 5 * CHUNK_SIZE + 3};
+        IdBitmap bitmap = IdBitmap.EMPTY;
+        for (int id : ids) {
+            bitmap = bitmap.append(id);
+        }
+        assertEquals(toList(ids), ids(bitmap), "ids must come out in order across chunks and past empty ones");
+        assertEquals(ids.length, bitmap.cardinality(), "every appended id must be counted");
+    }
+
+    @Test
+    void testAppendTurnsAFullArrayIntoABitmap() {
+        BitSet expected = new BitSet();
+        IdBitmap bitmap = IdBitmap.EMPTY;
+        //every other id of the second chunk, one more than an array chunk holds
+        for (int i = 0; i <= MAX_ARRAY_CARDINALITY; ++i) {
+            int id = CHUNK_SIZE + 2 * i;
+            bitmap = bitmap.append(id);
+            expected.set(id);
+        }
+        assertEquals(ids(expected), ids(bitmap), "the ids must survive the chunk turning into a bitmap");
+        assertEquals(expected.cardinality(), bitmap.cardinality(), "the bitmap chunk must count its ids");
+    }
+
+    @Test
+    void testAndNotTurnsABitmapBackIntoAnArray() {
+        IdBitmap dense = IdBitmap.range(2 * CHUNK_SIZE);
+        BitSet kept = new BitSet();
+        kept.set(CHUNK_SIZE - 1);
+        kept.set(CHUNK_SIZE);
+        kept.set(CHUNK_SIZE + 100);
+        BitSet removed = new BitSet();
+        removed.set(0, 2 * CHUNK_SIZE);
+        removed.andNot(kept);
+        IdBitmap result = dense.andNot(of(removed));
+        assertEquals(ids(kept), ids(result), "a bitmap chunk emptied out must keep only the ids left");
+        assertEquals(3, result.cardinality(), "only the ids left must be counted");
+
+        IdBitmap refilled = result.or(IdBitmap.range(CHUNK_SIZE));
+        BitSet expected = new BitSet();
+        expected.set(0, CHUNK_SIZE);
+        expected.or(kept);
+        assertEquals(ids(expected), ids(refilled), "or with a full chunk must turn the array back into a bitmap");
+    }
+
+    @Test
+    void testRangeEndsAtChunkBoundaries() {
+        for (int count : new int[]{0, 1, 64, 65, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1}) {
+            IdBitmap range = IdBitmap.range(count);
+            BitSet expected = new BitSet();
+            expected.set(0, count);
+            assertEquals(count, range.cardinality(), "a range must hold exactly its ids");
+            assertEquals(ids(expected), ids(range), "a range must hold the ids below its count");
+        }
+    }
+
+    @Test
+    void testSetOperationsMatchBitSets() {
+        Random random = new Random(7);
+        //from a few ids per chunk to almost full chunks, so arrays meet arrays, bitmaps and both
+        double[] densities = {0.0005, 0.01, 0.05, 0.2, 0.9};
+        for (double left : densities) {
+            for (double right : densities) {
+                BitSet a = randomIds(random, left);
+                BitSet b = randomIds(random, right);
+                IdBitmap x = of(a);
+                IdBitmap y = append(b);
+
+                BitSet and = (BitSet) a.clone();
+                and.and(b);
+                BitSet andNot = (BitSet) a.clone();
+                andNot.andNot(b);
+                BitSet or = (BitSet) a.clone();
+                or.or(b);
+
+                assertEquals(ids(and), ids(x.and(y)), "and must match at densities " + left + " and " + right);
+                assertEquals(ids(andNot), ids(x.andNot(y)), "and not must match at densities " + left + " and " + right);
+                assertEquals(ids(or), ids(x.or(y)), "or must match at densities " + left + " and " + right);
+                assertEquals(and.cardinality(), x.and(y).cardinality(), "and must count its ids");
+                assertEquals(andNot.cardinality(), x.andNot(y).cardinality(), "and not must count its ids");
+                assertEquals(or.cardinality(), x.or(y).cardinality(), "or must count its ids");
+            }
+        }
+    }
+
+    @Test
+    void testOperationsOnBitmapsOfDifferentLengths() {
+        IdBitmap shortOne = IdBitmap.EMPTY.append(3);
+        IdBitmap longOne = IdBitmap.EMPTY.append(3).append(3 * CHUNK_SIZE);
+        assertEquals(List.of(3), ids(longOne.and(shortOne)), "and must stop at the shorter bitmap");
+        assertEquals(List.of(3 * CHUNK_SIZE), ids(longOne.andNot(shortOne)), "and not must keep the longer tail");
+        assertEquals(List.of(), ids(shortOne.andNot(longOne)), "and not must not grow the bitmap");
+        assertEquals(List.of(3, 3 * CHUNK_SIZE), ids(shortOne.or(longOne)), "or must take the longer tail");
+    }
+
+    @Test
+    void testSelectIsAViewOfTheIds() {
+        List<String> byId = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            byId.add("cocktail " + i);
+        }
+        IdBitmap bitmap = IdBitmap.EMPTY.append(1).append(4).append(9);
+        assertEquals(List.of("cocktail 1", "cocktail 4", "cocktail 9"), new ArrayList<>(bitmap.select(byId)),
+                "the selected elements must follow the ids");
+        assertEquals(3, bitmap.select(byId).size(), "the view must be as big as the bitmap");
+    }
+
+    private static BitSet randomIds(Random random, double density) {
+        BitSet ids = new BitSet();
+        for (int id = 0; id < 3 * CHUNK_SIZE; ++id) {
+            if (random.nextDouble() < density) {
+                ids.set(id);
+            }
+        }
+        return ids;
+    }
+
+    private static IdBitmap of(BitSet ids) {
+        int[] sorted = ids.stream().toArray();
+        return IdBitmap.ofSorted(sorted, sorted.length);
+    }
+
+    private static IdBitmap append(BitSet ids) {
+        IdBitmap bitmap = IdBitmap.EMPTY;
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            bitmap = bitmap.append(id);
+        }
+        return bitmap;
+    }
+
+    private static List<Integer> ids(IdBitmap bitmap) {
+        List<Integer> result = new ArrayList<>();
+        IdBitmap.IdIterator ids = bitmap.iterator();
+        while (ids.hasNext()) {
+            result.add(ids.next());
+        }
+        return result;
+    }
+
+    private static List<Integer> ids(BitSet bitSet) {
+        return bitSet.stream().boxed().toList();
+    }
+
+    private static List<Integer> toList(int[] ids) {
+        List<Integer> result = new ArrayList<>();
+        for (int id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+}
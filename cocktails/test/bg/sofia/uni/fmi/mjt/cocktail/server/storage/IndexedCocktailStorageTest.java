@@ -0,0 +1,120 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.storage;
+
+import bg.sofia.uni.fmi.mjt.cocktail.server.Cocktail;
+import bg.sofia.uni.fmi.mjt.cocktail.server.Ingredient;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.exceptions.CocktailAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.cocktail.server.storage.exceptions.CocktailNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedCocktailStorageTest {
+    private static final int INGREDIENTS = 30;
+    private static final int COCKTAILS = 3000;
+    private static final int QUERIES = 300;
+
+    private final Random random = new Random(23);
+    private final CocktailStorage indexed = new IndexedCocktailStorage();
+    private final CocktailStorage reference = new DefaultCocktailStorage();
+
+    @BeforeEach
+    void setUp() throws CocktailAlreadyExistsException {
+        //names are lower case, the reference storage compares some of them case-sensitively
+        for (int i = 0; i < COCKTAILS; ++i) {
+            Set<Ingredient> ingredients = new HashSet<>();
+            //a few cocktails have no ingredients at all
+            int count = random.nextInt(6);
+            for (String name : randomIngredients(count)) {
+                ingredients.add(new Ingredient(name, random.nextInt(100) + "ml"));
+            }
+            Cocktail cocktail = new Cocktail("cocktail " + i, ingredients);
+            indexed.createCocktail(cocktail);
+            reference.createCocktail(cocktail);
+        }
+    }
+
+    @Test
+    void testAllCocktailsMatch() {
+        assertSameCocktails(reference.getCocktails(), indexed.getCocktails(), "all cocktails");
+    }
+
+    @Test
+    void testCocktailsWithIngredientMatch() {
+        for (int i = 0; i <= INGREDIENTS; ++i) {
+            String ingredient = "ingredient " + i;
+            assertSameCocktails(reference.getCocktailsWithIngredient(ingredient),
+                    indexed.getCocktailsWithIngredient(ingredient), "with " + ingredient);
+        }
+    }
+
+    @Test
+    void testCocktailsWithIngredientsMatch() {
+        for (int i = 0; i < QUERIES; ++i) {
+            List<String> required = randomIngredients(random.nextInt(4));
+            List<String> excluded = randomIngredients(random.nextInt(3));
+            assertSameCocktails(reference.getCocktailsWithIngredients(required, excluded),
+                    indexed.getCocktailsWithIngredients(required, excluded),
+                    "with " + required + " and without " + excluded);
+        }
+    }
+
+    @Test
+    void testCocktailsMadeFromMatch() {
+        for (int i = 0; i < QUERIES; ++i) {
+            List<String> available = randomIngredients(random.nextInt(INGREDIENTS / 2));
+            //a pantry may name an ingredient twice or one no cocktail uses
+            if (!available.isEmpty() && random.nextBoolean()) {
+                available.add(available.get(0));
+            }
+            available.add("ingredient " + INGREDIENTS);
+            assertSameCocktails(reference.getCocktailsMadeFrom(available), indexed.getCocktailsMadeFrom(available),
+                    "made from " + available);
+        }
+    }
+
+    @Test
+    void testLookupsIgnoreCase() throws CocktailNotFoundException {
+        Cocktail cocktail = indexed.getCocktail("COCKTAIL 7");
+        assertEquals("cocktail 7", cocktail.name(), "names must be looked up case-insensitively");
+        assertEquals(new HashSet<>(indexed.getCocktailsWithIngredient("ingredient 1")),
+                new HashSet<>(indexed.getCocktailsWithIngredient("INGREDIENT 1")),
+                "ingredients must be looked up case-insensitively");
+        assertThrows(CocktailAlreadyExistsException.class,
+                () -> indexed.createCocktail(new Cocktail("Cocktail 7", Set.of())),
+                "a name differing only by case must be taken");
+    }
+
+    @Test
+    void testViewsDoNotSeeLaterCocktails() throws CocktailAlreadyExistsException {
+        Collection<Cocktail> all = indexed.getCocktails();
+        Collection<Cocktail> withGin = indexed.getCocktailsWithIngredient("gin");
+        long version = indexed.getVersion();
+        indexed.createCocktail(new Cocktail("late", Set.of(new Ingredient("gin", "50ml"))));
+        assertEquals(COCKTAILS, all.size(), "a view taken before a create must not grow");
+        assertTrue(withGin.isEmpty(), "a view taken before a create must not see the new cocktail");
+        assertEquals(1, indexed.getCocktailsWithIngredient("gin").size(), "a new view must see the new cocktail");
+        assertTrue(indexed.getVersion() > version, "a create must bump the version");
+    }
+
+    private List<String> randomIngredients(int count) {
+        Set<String> names = new HashSet<>();
+        while (names.size() < count) {
+            names.add("ingredient " + random.nextInt(INGREDIENTS));
+        }
+        return new ArrayList<>(names);
+    }
+
+    private static void assertSameCocktails(Collection<Cocktail> expected, Collection<Cocktail> actual, String query) {
+        Set<Cocktail> actualSet = new HashSet<>(actual);
+        assertEquals(actual.size(), actualSet.size(), "no cocktail must be returned twice for " + query);
+        assertEquals(new HashSet<>(expected), actualSet, "the cocktails must match for " + query);
+    }
+}
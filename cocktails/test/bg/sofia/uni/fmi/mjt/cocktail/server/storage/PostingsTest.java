@@ -0,0 +1,87 @@
+package bg.sofia.uni.fmi.mjt.cocktail.server.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingsTest {
+    @Test
+    void testSnapshotDoesNotSeeLaterAppends() {
+        Postings<Integer> snapshot = Postings.<Integer>empty().append(0).append(1).append(2);
+        //the next append goes into the same array, the snapshot must still end at its own size
+        Postings<Integer> longer = snapshot.append(3);
+        assertEquals(List.of(0, 1, 2), snapshot, "a snapshot must keep its elements");
+        assertEquals(3, snapshot.size(), "a snapshot must keep its size");
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.get(3),
+                "a snapshot must not reach an element appended after it");
+        assertEquals(List.of(0, 1, 2, 3), longer, "the longer list must see the appended element");
+    }
+
+    @Test
+    void testSnapshotSurvivesGrowing() {
+        Postings<Integer> snapshot = Postings.empty();
+        for (int i = 0; i < 4; ++i) {
+            snapshot = snapshot.append(i);
+        }
+        Postings<Integer> longer = snapshot;
+        for (int i = 4; i < 100; ++i) {
+            longer = longer.append(i);
+        }
+        assertEquals(List.of(0, 1, 2, 3), snapshot, "a snapshot must keep its elements once the array is copied");
+        assertEquals(100, longer.size(), "the longer list must hold every element");
+    }
+
+    @Test
+    void testEmptyListsAreShared() {
+        assertSame(Postings.empty(), Postings.empty(), "the empty list must be shared");
+        assertTrue(Postings.empty().isEmpty(), "the empty list must be empty");
+    }
+
+    @Test
+    void testReadersSeeConsistentSnapshotsWhileAppending() throws InterruptedException {
+        int elements = 200_000;
+        AtomicReference<Postings<Integer>> current = new AtomicReference<>(Postings.empty());
+        List<Throwable> failures = new ArrayList<>();
+        Thread writer = new Thread(() -> {
+            Postings<Integer> postings = current.get();
+            for (int i = 0; i < elements; ++i) {
+                postings = postings.append(i);
+                current.set(postings);
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; ++r) {
+            readers.add(new Thread(() -> {
+                try {
+                    int lastSize = 0;
+                    while (lastSize < elements) {
+                        Postings<Integer> snapshot = current.get();
+                        int size = snapshot.size();
+                        assertTrue(size >= lastSize, "a newer snapshot must not be shorter");
+                        int expected = 0;
+                        for (int element : snapshot) {
+                            assertEquals(expected++, element, "every element must be the one appended there");
+                        }
+                        assertEquals(size, expected, "iterating must give exactly the snapshot's elements");
+                        lastSize = size;
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(List.of(), failures, "readers must never see a broken snapshot");
+    }
+}
@@ -1,4 +1,5 @@
-import server.Server;
+import server.MatrixServer;
+import server.ServerConfig;
 
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
@@ -7,15 +8,26 @@ import java.util.concurrent.TimeUnit;
 
 public class Main {
     public static void main(String[] args) {
-        Server server = new Server(6666);
+        ServerConfig config;
+        try {
+            config = ServerConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(ServerConfig.USAGE);
+            return;
+        }
+        MatrixServer server = MatrixServer.create(config);
         Thread serverThread = new Thread(server);
         ExecutorService serverExecutor = Executors.newSingleThreadExecutor();
         serverExecutor.execute(serverThread);
         Scanner scanner = new Scanner(System.in);
         String adminCommand = "command";
         while (!adminCommand.equals("stop")) {
-            System.out.println("enter stop if you want to shutdown");
+            System.out.println("enter stop if you want to shutdown or stats to see request latencies");
             adminCommand = scanner.nextLine();
+            if (adminCommand.equals("stats")) {
+                System.out.println(server.getMetrics().report());
+            }
         }
         server.stop();
         
@@ -0,0 +1,41 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+
+//plain timing harness, the project has no build tool to pull JMH in
+public final class BenchmarkRunner {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+
+    private BenchmarkRunner() {
+    }
+
+    public static void run(String name, Runnable operation) {
+        run(name, WARMUP_ITERATIONS, MEASURED_ITERATIONS, operation);
+    }
+
+    public static void run(String name, int warmupIterations, int measuredIterations, Runnable operation) {
+        for (int i = 0; i < warmupIterations; ++i) {
+            operation.run();
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < measuredIterations; ++i) {
+            operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.printf("%-50s %12.3f ms/op %14d B/op%n", name,
+                elapsed / 1_000_000.0 / measuredIterations, allocated / measuredIterations);
+    }
+
+    //only counts the calling thread, work handed to other threads is not included
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadBean) {
+            return threadBean.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return -1;
+    }
+}
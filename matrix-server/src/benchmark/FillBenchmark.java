@@ -0,0 +1,62 @@
+package benchmark;
+
+import matrix.FillEngine;
+import matrix.Matrix;
+import matrix.MatrixFiller;
+import matrix.StorageType;
+import point.InvalidPointException;
+import point.Point;
+import point.PointBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class FillBenchmark {
+    private static final int[] BATCH_SIZES = {10, 1_000, 100_000};
+    private static final int DIMENSION = 1000;
+
+    public static void main(String[] args) throws InvalidPointException {
+        FillEngine fillEngine = new FillEngine();
+        for (int batchSize : BATCH_SIZES) {
+            List<Point> points = randomPoints(batchSize);
+            PointBatch batch = PointBatch.of(points);
+            //left to itself the matrix would start sparse, which the fill engine writes sequentially and which
+            //the thread per point baseline must not write concurrently
+            Matrix matrix = new Matrix(DIMENSION, DIMENSION, StorageType.FLAT);
+            BenchmarkRunner.run("thread per point, " + batchSize + " points", () -> threadPerPoint(matrix, points));
+            BenchmarkRunner.run("fill engine, " + batchSize + " points", () -> fillEngine.fill(matrix, batch));
+        }
+    }
+
+    //what the server did before the fill engine, except that the pool is capped
+    //the server used one pool thread per point which does not survive 100k points
+    private static void threadPerPoint(Matrix matrix, List<Point> points) {
+        List<Thread> fillerThreads = new ArrayList<>();
+        for (var point : points) {
+            fillerThreads.add(new Thread(new MatrixFiller(matrix, point)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(fillerThreads.size(), 256));
+        for (var filler : fillerThreads) {
+            executor.execute(filler);
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("jvm interrupted the thread before all tasks were finished", e);
+        }
+    }
+
+    private static List<Point> randomPoints(int count) throws InvalidPointException {
+        Random random = new Random(42);
+        List<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            points.add(new Point(random.nextInt(DIMENSION), random.nextInt(DIMENSION), random.nextInt()));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,63 @@
+package benchmark;
+
+import matrix.Matrix;
+import matrix.MatrixOperations;
+import matrix.StorageType;
+
+import java.util.Random;
+
+public class OperationsBenchmark {
+    private static final int[] DIMENSIONS = {128, 512, 1024};
+
+    public static void main(String[] args) {
+        MatrixOperations operations = new MatrixOperations();
+        for (int dimension : DIMENSIONS) {
+            Matrix first = randomMatrix(dimension);
+            Matrix second = randomMatrix(dimension);
+            int iterations = dimension >= 1024 ? 3 : 10;
+            BenchmarkRunner.run("naive multiply, " + dimension + "x" + dimension, 2, iterations,
+                    () -> naiveMultiply(first, second));
+            BenchmarkRunner.run("blocked parallel multiply, " + dimension + "x" + dimension, 2, iterations,
+                    () -> operations.multiply(first, second));
+            BenchmarkRunner.run("naive transpose, " + dimension + "x" + dimension, 2, iterations,
+                    () -> naiveTranspose(first));
+            BenchmarkRunner.run("blocked parallel transpose, " + dimension + "x" + dimension, 2, iterations,
+                    () -> operations.transpose(first));
+        }
+    }
+
+    private static Matrix naiveMultiply(Matrix first, Matrix second) {
+        Matrix product = new Matrix(first.getRows(), second.getCols(), StorageType.FLAT);
+        for (int i = 0; i < first.getRows(); ++i) {
+            for (int j = 0; j < second.getCols(); ++j) {
+                int sum = 0;
+                for (int k = 0; k < first.getCols(); ++k) {
+                    sum += first.getValue(i, k) * second.getValue(k, j);
+                }
+                product.insertValue(i, j, sum);
+            }
+        }
+        return product;
+    }
+
+    private static Matrix naiveTranspose(Matrix matrix) {
+        Matrix transposed = new Matrix(matrix.getCols(), matrix.getRows(), StorageType.FLAT);
+        for (int i = 0; i < matrix.getRows(); ++i) {
+            for (int j = 0; j < matrix.getCols(); ++j) {
+                transposed.insertValue(j, i, matrix.getValue(i, j));
+            }
+        }
+        return transposed;
+    }
+
+    private static Matrix randomMatrix(int dimension) {
+        Random random = new Random(dimension);
+        Matrix matrix = new Matrix(dimension, dimension, StorageType.FLAT);
+        for (int i = 0; i < dimension; ++i) {
+            for (int j = 0; j < dimension; ++j) {
+                matrix.insertValue(i, j, random.nextInt(100));
+            }
+        }
+        return matrix;
+    }
+}
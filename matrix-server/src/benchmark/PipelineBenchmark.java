@@ -0,0 +1,61 @@
+package benchmark;
+
+import client.PipelinedConnection;
+import point.PointBatch;
+import server.Server;
+import server.ServerConfig;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+//one round trip per batch against pipelining all batches, on localhost the round trip is tiny
+//so the gap only grows over a real link
+public class PipelineBenchmark {
+    private static final int PORT = 6699;
+    private static final int DIMENSION = 100;
+    private static final int BATCHES = 1_000;
+    private static final int POINTS_PER_BATCH = 50;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Server server = new Server(ServerConfig.defaults(PORT, null));
+        Thread serverThread = new Thread(server);
+        serverThread.start();
+        Thread.sleep(500);
+
+        PointBatch[] batches = randomBatches();
+        try (PipelinedConnection connection = PipelinedConnection.open("localhost", PORT)) {
+            connection.send(DIMENSION + " " + DIMENSION).join();
+            //small replies, the full matrix would make this a render benchmark
+            connection.send("mode delta").join();
+
+            BenchmarkRunner.run("lockstep, " + BATCHES + " batches", 2, 5, () -> {
+                for (PointBatch batch : batches) {
+                    connection.sendPoints(batch).join();
+                }
+            });
+            BenchmarkRunner.run("pipelined, " + BATCHES + " batches", 2, 5, () -> {
+                CompletableFuture<String> last = null;
+                for (PointBatch batch : batches) {
+                    last = connection.sendPoints(batch);
+                }
+                last.join();
+            });
+        } finally {
+            server.stop();
+            serverThread.join();
+        }
+    }
+
+    private static PointBatch[] randomBatches() {
+        Random random = new Random(42);
+        PointBatch[] batches = new PointBatch[BATCHES];
+        for (int i = 0; i < BATCHES; ++i) {
+            batches[i] = new PointBatch(POINTS_PER_BATCH);
+            for (int j = 0; j < POINTS_PER_BATCH; ++j) {
+                batches[i].add(random.nextInt(DIMENSION), random.nextInt(DIMENSION), random.nextInt(1000));
+            }
+        }
+        return batches;
+    }
+}
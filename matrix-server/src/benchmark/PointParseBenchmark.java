@@ -0,0 +1,75 @@
+package benchmark;
+
+import point.InvalidPointException;
+import point.Point;
+import point.PointBatch;
+import point.PointParser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+//a text points request from its bytes to a batch that is ready for the fill engine
+public class PointParseBenchmark {
+    private static final int[] BATCH_SIZES = {10, 1_000, 100_000};
+    private static final int DIMENSION = 1000;
+
+    public static void main(String[] args) {
+        for (int batchSize : BATCH_SIZES) {
+            ByteBuffer request = randomRequest(batchSize);
+            BenchmarkRunner.run("point set, " + batchSize + " points", () -> pointSet(request.duplicate()));
+            BenchmarkRunner.run("parser and cell set, " + batchSize + " points", () -> cellSet(request.duplicate()));
+        }
+    }
+
+    private static PointBatch cellSet(ByteBuffer request) {
+        try {
+            PointBatch points = PointParser.parse(request);
+            points.retainLastWithin(DIMENSION, DIMENSION);
+            return points;
+        } catch (InvalidPointException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //what the request handler did before the parser
+    private static PointBatch pointSet(ByteBuffer request) {
+        String clientInput = StandardCharsets.UTF_8.decode(request).toString().trim();
+        try {
+            List<Point> pointsPassed = new LinkedList<>();
+            String[] points = clientInput.split("\\s+");
+            for (int i = 0; i < points.length; i += 3) {
+                int x = Integer.parseInt(points[i]) - 1;
+                int y = Integer.parseInt(points[i + 1]) - 1;
+                int value = Integer.parseInt(points[i + 2]);
+                pointsPassed.add(new Point(x, y, value));
+            }
+            Set<Point> validPoints = new HashSet<>();
+            for (var point : pointsPassed) {
+                if (point.getX() < DIMENSION && point.getY() < DIMENSION) {
+                    validPoints.remove(point);
+                    validPoints.add(point);
+                }
+            }
+            return PointBatch.of(validPoints);
+        } catch (InvalidPointException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //a few points fall outside the matrix and many cells repeat, like in real requests
+    private static ByteBuffer randomRequest(int count) {
+        Random random = new Random(42);
+        StringBuilder request = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            request.append(random.nextInt(DIMENSION + 10) + 1).append(' ')
+                    .append(random.nextInt(DIMENSION / 10) + 1).append(' ')
+                    .append(random.nextInt(1000)).append(' ');
+        }
+        return StandardCharsets.UTF_8.encode(request.toString());
+    }
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import matrix.Matrix;
+import matrix.MatrixRenderer;
+import matrix.StorageType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class RenderBenchmark {
+    private static final int[] DIMENSIONS = {50, 512, 1024, 4096};
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    public static void main(String[] args) {
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        for (int dimension : DIMENSIONS) {
+            Matrix matrix = randomMatrix(dimension);
+            //the big ones take seconds per iteration with the string path
+            int iterations = dimension >= 1024 ? 3 : 10;
+            BenchmarkRunner.run("getMatrixAsString, " + dimension + "x" + dimension, 2, iterations,
+                    () -> matrix.getMatrixAsString().getBytes(StandardCharsets.UTF_8));
+            BenchmarkRunner.run("renderer into reused buffer, " + dimension + "x" + dimension, 2, iterations,
+                    () -> renderInChunks(matrix, chunk));
+        }
+    }
+
+    private static void renderInChunks(Matrix matrix, ByteBuffer chunk) {
+        MatrixRenderer renderer = new MatrixRenderer(matrix);
+        boolean done;
+        do {
+            chunk.clear();
+            done = renderer.render(chunk);
+        } while (!done);
+    }
+
+    private static Matrix randomMatrix(int dimension) {
+        Random random = new Random(42);
+        Matrix matrix = new Matrix(dimension, dimension, StorageType.FLAT);
+        for (int i = 0; i < dimension; ++i) {
+            for (int j = 0; j < dimension; ++j) {
+                matrix.insertValue(i, j, random.nextInt(1000));
+            }
+        }
+        return matrix;
+    }
+}
@@ -1,9 +1,13 @@
 package client;
 
+import protocol.FrameCodec;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 public class Client {
@@ -26,38 +30,26 @@ public class Client {
             int rows = setUp(scanner, "rows");
             int cols = setUp(scanner, "cols");
             String dimensions = rows + " " + cols;
-            buffer.clear();
-            buffer.put(dimensions.getBytes());
-            buffer.flip();
-            socketChannel.write(buffer);
+            writeFrame(socketChannel, dimensions);
+            System.out.println(readFrame(socketChannel));
 
             while (true) {
-                System.out.println("enter points coordinates and value or quit to exit");
+                System.out.println("enter points coordinates and value, mode full, mode delta, snapshot," +
+                        " rows <first> <last> or quit to exit");
                 String message = scanner.nextLine();
                 message = message.trim();
 
                 if ("quit".equals(message)) {
                     break;
                 }
-                if (!validPoints(message, rows, cols)) {
+                if (!isCommand(message) && !validPoints(message, rows, cols)) {
                     System.out.println("invalid point passed, format is: <x> <y> <value>," +
                             " make sure dimensions are within the created matrix");
                     continue;
                 }
 
-                buffer.clear();
-                buffer.put(message.getBytes());
-                buffer.flip();
-                socketChannel.write(buffer);
-
-                buffer.clear();
-                socketChannel.read(buffer);
-                buffer.flip();
-                byte[] byteArray = new byte[buffer.remaining()];
-                buffer.get(byteArray);
-                String reply = new String(byteArray, "UTF-8");
-
-                System.out.println(reply);
+                writeFrame(socketChannel, message);
+                System.out.println(readFrame(socketChannel));
             }
 
         } catch (IOException e) {
@@ -65,6 +57,40 @@ public class Client {
         }
     }
 
+    private static void writeFrame(SocketChannel socketChannel, String message) throws IOException {
+        ByteBuffer frame = FrameCodec.encode(message);
+        while (frame.hasRemaining()) {
+            socketChannel.write(frame);
+        }
+    }
+
+    private static String readFrame(SocketChannel socketChannel) throws IOException {
+        buffer.clear();
+        buffer.limit(FrameCodec.HEADER_SIZE);
+        readFully(socketChannel, buffer);
+        buffer.flip();
+        int length = buffer.getInt();
+        if (length < 0 || length > FrameCodec.MAX_FRAME_SIZE) {
+            throw new IOException("server sent a frame of invalid length " + length);
+        }
+
+        //replies such as a whole matrix can be a lot bigger than the shared buffer
+        ByteBuffer payload = length <= BUFFER_SIZE ? buffer : ByteBuffer.allocate(length);
+        payload.clear();
+        payload.limit(length);
+        readFully(socketChannel, payload);
+        payload.flip();
+        return StandardCharsets.UTF_8.decode(payload).toString();
+    }
+
+    private static void readFully(SocketChannel socketChannel, ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            if (socketChannel.read(target) < 0) {
+                throw new EOFException("server closed the connection");
+            }
+        }
+    }
+
     private static int setUp(Scanner scanner, String toSet) {
 
         System.out.println("enter " + toSet);
@@ -76,6 +102,11 @@ public class Client {
         return result;
     }
 
+    private static boolean isCommand(String message) {
+        //the server checks the commands itself
+        return !message.isEmpty() && Character.isLetter(message.charAt(0));
+    }
+
     private static boolean validPoints(String pointStr,int rows, int cols) {
         String[] points = pointStr.split(" ");
         if (points.length % 3 != 0) {
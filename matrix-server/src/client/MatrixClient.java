@@ -0,0 +1,244 @@
+package client;
+
+import matrix.Matrix;
+import point.PointBatch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+//a thread-safe client for services, every call returns right away with a future of the reply
+//a matrix is kept under its name by the pooled connection of that name, a published one can be opened by other clients too
+//all requests for one matrix go over the same pooled connection, so they reach the server in the order they were made
+//and many updates of a matrix are pipelined; different matrices spread over the pool
+//a future fails with a MatrixClientException carrying the server's reply if the server turned the request down
+public class MatrixClient implements AutoCloseable {
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    private final List<Lane> lanes;
+    //rows and cols of every matrix this client has created or opened
+    private final Map<String, int[]> dimensions;
+
+    private MatrixClient(List<Lane> lanes) {
+        this.lanes = lanes;
+        this.dimensions = new ConcurrentHashMap<>();
+    }
+
+    public static MatrixClient connect(String host, int port) throws IOException {
+        return connect(host, port, DEFAULT_POOL_SIZE);
+    }
+
+    public static MatrixClient connect(String host, int port, int poolSize) throws IOException {
+        List<Lane> lanes = new ArrayList<>(poolSize);
+        try {
+            for (int i = 0; i < poolSize; ++i) {
+                lanes.add(new Lane(PipelinedConnection.open(host, port)));
+            }
+        } catch (IOException e) {
+            for (Lane lane : lanes) {
+                lane.connection.close();
+            }
+            throw e;
+        }
+        return new MatrixClient(lanes);
+    }
+
+    //makes an empty matrix on the server that only this client can use
+    public CompletableFuture<Void> createMatrix(String name, int rows, int cols) {
+        return createMatrix(name, rows, cols, false);
+    }
+
+    //makes an empty matrix on the server and, if publish is set, publishes it under name for other clients to open
+    //a published matrix counts against the server's limits until it is unpublished
+    public CompletableFuture<Void> createMatrix(String name, int rows, int cols, boolean publish) {
+        Lane lane = laneOf(name);
+        return lane.submit(sent -> lane.connection.send("new " + name + " " + rows + " " + cols)
+                .thenCompose(created -> {
+                    expect(created, "matrix ");
+                    CompletableFuture<String> used = lane.connection.send("use " + name);
+                    return publish ? lane.connection.send("publish " + name) : used;
+                })
+                .<Void>handle((reply, failure) -> {
+                    //the connection may have a matrix of its own under name now, the next request opens the shared one
+                    lane.opened.remove(name);
+                    lane.active = null;
+                    try {
+                        if (failure != null) {
+                            throw failure instanceof CompletionException completion ? completion : new CompletionException(failure);
+                        }
+                        expect(reply, publish ? "published " : "using ");
+                        dimensions.put(name, new int[]{rows, cols});
+                        lane.opened.add(name);
+                        lane.active = name;
+                        return null;
+                    } finally {
+                        sent.complete(null);
+                    }
+                }));
+    }
+
+    //points are 0 based, completes with the number of cells whose value changed
+    public CompletableFuture<Integer> setPoints(String name, PointBatch points) {
+        Lane lane = laneOf(name);
+        return lane.submit(sent -> onMatrix(lane, name, sent, connection -> connection.sendPoints(points)))
+                .thenApply(reply -> {
+                    //the lanes ask for delta replies, the first line is "<n> changed"
+                    int end = reply.indexOf(" changed");
+                    if (end < 0) {
+                        throw new CompletionException(new MatrixClientException(reply.trim()));
+                    }
+                    return Integer.parseInt(reply.substring(0, end));
+                });
+    }
+
+    //a copy of all cells, the server sends at most FrameCodec.MAX_FRAME_SIZE bytes of them
+    public CompletableFuture<Matrix> getMatrix(String name) {
+        Lane lane = laneOf(name);
+        return lane.submit(sent -> onMatrix(lane, name, sent, connection -> connection.send("snapshot")))
+                .thenApply(reply -> parseMatrix(dimensions.get(name), reply));
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Lane lane : lanes) {
+            try {
+                lane.connection.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Lane laneOf(String name) {
+        return lanes.get(Math.floorMod(name.hashCode(), lanes.size()));
+    }
+
+    //makes name the active matrix of the lane and sends the request
+    //a matrix the connection has not opened yet holds back the later requests of the lane until it is open,
+    //otherwise they would land on whatever matrix was active before if the open failed
+    private CompletableFuture<String> onMatrix(Lane lane, String name, CompletableFuture<Void> sent,
+                                               Function<PipelinedConnection, CompletableFuture<String>> request) {
+        if (name.equals(lane.active)) {
+            CompletableFuture<String> reply = request.apply(lane.connection);
+            sent.complete(null);
+            return reply;
+        }
+        if (lane.opened.contains(name)) {
+            //the connection keeps the matrix under its name, so use cannot fail
+            lane.connection.send("use " + name);
+            lane.active = name;
+            CompletableFuture<String> reply = request.apply(lane.connection);
+            sent.complete(null);
+            return reply;
+        }
+        return lane.connection.send("open " + name)
+                .handle((opened, failure) -> {
+                    try {
+                        if (failure != null) {
+                            throw failure instanceof CompletionException completion ? completion : new CompletionException(failure);
+                        }
+                        expect(opened, "opened ");
+                        String[] words = opened.trim().split(" ");
+                        dimensions.put(name, new int[]{Integer.parseInt(words[2]), Integer.parseInt(words[3])});
+                        lane.opened.add(name);
+                        lane.active = name;
+                        return request.apply(lane.connection);
+                    } finally {
+                        sent.complete(null);
+                    }
+                })
+                .thenCompose(reply -> reply);
+    }
+
+    private static void expect(String reply, String prefix) {
+        if (!reply.startsWith(prefix)) {
+            throw new CompletionException(new MatrixClientException(reply.trim()));
+        }
+    }
+
+    //a snapshot is rows lines of cols values separated by spaces
+    private static Matrix parseMatrix(int[] dimensions, String reply) {
+        int rows = dimensions[0];
+        int cols = dimensions[1];
+        int[] cells = new int[rows * cols];
+        int cell = 0;
+        int i = 0;
+        int length = reply.length();
+        while (true) {
+            while (i < length && Character.isWhitespace(reply.charAt(i))) {
+                ++i;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(reply.charAt(i))) {
+                ++i;
+            }
+            if (cell == cells.length) {
+                throw new CompletionException(new MatrixClientException("snapshot has more cells than the matrix"));
+            }
+            try {
+                cells[cell++] = Integer.parseInt(reply, start, i, 10);
+            } catch (NumberFormatException e) {
+                //not a snapshot but the server saying why there is none
+                throw new CompletionException(new MatrixClientException(reply.trim(), e));
+            }
+        }
+        if (cell != cells.length) {
+            throw new CompletionException(new MatrixClientException("snapshot has fewer cells than the matrix"));
+        }
+        return Matrix.fromRowMajor(rows, cols, cells);
+    }
+
+    //one pooled connection and what the server knows about it
+    private static final class Lane {
+        private final PipelinedConnection connection;
+        //matrices this connection holds under their name, and the active one
+        //only touched by the steps, which run one after another
+        private final Set<String> opened;
+        private volatile String active;
+        //completes once the last submitted step has sent its request, guarded by this
+        private CompletableFuture<Void> lastSent;
+
+        Lane(PipelinedConnection connection) {
+            this.connection = connection;
+            this.opened = ConcurrentHashMap.newKeySet();
+            //a full matrix after every batch of points would be far more than a service wants back
+            connection.send("mode delta");
+            this.lastSent = CompletableFuture.completedFuture(null);
+        }
+
+        //a step runs once the step before it has sent its request, and completes sent as soon as it has sent its own
+        //so steps keep their order while their replies are still pipelined
+        synchronized <T> CompletableFuture<T> submit(Function<CompletableFuture<Void>, CompletableFuture<T>> step) {
+            CompletableFuture<Void> previous = lastSent;
+            CompletableFuture<Void> sent = new CompletableFuture<>();
+            lastSent = sent;
+            Function<Void, CompletableFuture<T>> run = ignored -> {
+                try {
+                    return step.apply(sent);
+                } catch (RuntimeException e) {
+                    sent.complete(null);
+                    return CompletableFuture.failedFuture(e);
+                }
+            };
+            //a step that waited runs in the common pool, the reply reader must never block on a full pipeline
+            return previous.isDone() ? previous.thenCompose(run) : previous.thenComposeAsync(run);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package client;
+
+public class MatrixClientException extends Exception {
+    public MatrixClientException(String msg) {
+        super(msg);
+    }
+
+    public MatrixClientException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
@@ -0,0 +1,173 @@
+package client;
+
+import point.PointBatch;
+import protocol.FrameCodec;
+import protocol.InvalidFrameException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+//a connection for programs rather than people: requests go out without waiting for the replies to the earlier ones
+//the server answers the requests of a connection one at a time and in the order they came,
+//so the n-th reply belongs to the n-th request and a queue of futures is all the matching it takes
+public class PipelinedConnection implements AutoCloseable {
+    //past this many unanswered requests send blocks, the server stops reading a connection that floods it anyway
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    private static final int INITIAL_READ_BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    //futures are added in the same order their frames are written, under writeLock
+    private final Queue<CompletableFuture<ByteBuffer>> pending;
+    private final Object writeLock;
+    private final Semaphore inFlight;
+    private final Thread reader;
+    private volatile IOException failure;
+
+    public PipelinedConnection(SocketChannel channel, int maxInFlight) {
+        this.channel = channel;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.writeLock = new Object();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.reader = new Thread(this::readReplies, "pipelined-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public static PipelinedConnection open(String host, int port) throws IOException {
+        return open(host, port, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public static PipelinedConnection open(String host, int port, int maxInFlight) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        return new PipelinedConnection(channel, maxInFlight);
+    }
+
+    //the reply future fails if the connection breaks before the reply arrives
+    //or right away if the server would turn the request down for its size
+    public CompletableFuture<ByteBuffer> send(ByteBuffer payload) {
+        if (payload.remaining() > FrameCodec.MAX_REQUEST_SIZE) {
+            return CompletableFuture.failedFuture(new IOException("a request of " + payload.remaining() +
+                    " bytes is over the limit of " + FrameCodec.MAX_REQUEST_SIZE + ", split it"));
+        }
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        ByteBuffer frame = FrameCodec.encode(payload);
+        CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+        synchronized (writeLock) {
+            if (failure != null) {
+                inFlight.release();
+                return CompletableFuture.failedFuture(failure);
+            }
+            pending.add(reply);
+            try {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return reply;
+    }
+
+    public CompletableFuture<String> send(String request) {
+        return send(ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8)))
+                .thenApply(reply -> StandardCharsets.UTF_8.decode(reply).toString());
+    }
+
+    //points of the batch are 0 based, they go out 1 based as "row col value" triples of the text protocol
+    public CompletableFuture<String> sendPoints(PointBatch points) {
+        StringBuilder request = new StringBuilder(points.size() * 12);
+        for (int i = 0; i < points.size(); ++i) {
+            if (i > 0) {
+                request.append(' ');
+            }
+            request.append(points.getRow(i) + 1).append(' ')
+                    .append(points.getCol(i) + 1).append(' ')
+                    .append(points.getValue(i));
+        }
+        return send(request.toString());
+    }
+
+    //requests sent but not answered yet
+    public int getInFlight() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        fail(new IOException("connection closed"));
+        channel.close();
+    }
+
+    private void readReplies() {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        try {
+            while (true) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("server closed the connection");
+                }
+                buffer.flip();
+                ByteBuffer payload;
+                while ((payload = FrameCodec.nextFrame(buffer)) != null) {
+                    //the payload is a view over the buffer which is about to be compacted
+                    ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+                    copy.put(payload);
+                    copy.flip();
+                    CompletableFuture<ByteBuffer> reply = pending.poll();
+                    //a frame nobody asked for took no permit, giving one back would let more requests in flight
+                    if (reply != null) {
+                        inFlight.release();
+                        reply.complete(copy);
+                    }
+                }
+                buffer.compact();
+                buffer = ensureCapacityForPendingFrame(buffer);
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InvalidFrameException e) {
+            fail(new IOException("server sent an invalid frame", e));
+        }
+    }
+
+    private static ByteBuffer ensureCapacityForPendingFrame(ByteBuffer buffer) throws InvalidFrameException {
+        if (buffer.position() < FrameCodec.HEADER_SIZE) {
+            return buffer;
+        }
+        int needed = FrameCodec.HEADER_SIZE + FrameCodec.frameLength(buffer, 0);
+        if (needed <= buffer.capacity()) {
+            return buffer;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(needed);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    //fails every request still waiting and every later one
+    private void fail(IOException cause) {
+        synchronized (writeLock) {
+            if (failure == null) {
+                failure = cause;
+            }
+            CompletableFuture<ByteBuffer> reply;
+            while ((reply = pending.poll()) != null) {
+                inFlight.release();
+                reply.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package files;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//reads a file front to back through read-only mappings of one region at a time
+class MappedInput {
+    //a multiple of the int size, so an int of a binary file never straddles two regions
+    static final int REGION_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    MappedInput(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        map(0);
+    }
+
+    long size() {
+        return size;
+    }
+
+    //the next byte as 0 to 255, or -1 at the end of the file
+    int read() throws IOException {
+        if (!region.hasRemaining()) {
+            if (regionStart + region.capacity() == size) {
+                return -1;
+            }
+            map(regionStart + region.capacity());
+        }
+        return region.get() & 0xFF;
+    }
+
+    //fills target from offset with the next count ints, the file must hold them
+    void readInts(int[] target, int offset, int count) throws IOException {
+        while (count > 0) {
+            if (!region.hasRemaining()) {
+                map(regionStart + region.capacity());
+            }
+            int chunk = Math.min(count, region.remaining() / Integer.BYTES);
+            region.asIntBuffer().get(target, offset, chunk);
+            region.position(region.position() + chunk * Integer.BYTES);
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    private void map(long start) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+    }
+}
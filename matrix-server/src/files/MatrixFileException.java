@@ -0,0 +1,11 @@
+package files;
+
+public class MatrixFileException extends Exception {
+    public MatrixFileException(String msg) {
+        super(msg);
+    }
+
+    public MatrixFileException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
@@ -0,0 +1,27 @@
+package files;
+
+import java.nio.file.Path;
+
+public enum MatrixFileFormat {
+    //one line per row, cells separated by commas
+    CSV,
+    //a header of MAGIC, rows and cols followed by every cell as a big-endian int in row-major order
+    BINARY;
+
+    public static final int MAGIC = 0x4D584631;
+    public static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    //csv or bin
+    public static MatrixFileFormat fromName(String name) {
+        return switch (name) {
+            case "csv" -> CSV;
+            case "bin" -> BINARY;
+            default -> throw new IllegalArgumentException("unknown file format " + name);
+        };
+    }
+
+    //files ending in .csv are csv, everything else is binary
+    public static MatrixFileFormat forFile(Path file) {
+        return file.getFileName().toString().endsWith(".csv") ? CSV : BINARY;
+    }
+}
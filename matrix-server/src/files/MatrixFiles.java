@@ -0,0 +1,294 @@
+package files;
+
+import matrix.Matrix;
+import matrix.MatrixRenderer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+//imports and exports whole matrices from and to files of a single directory, clients name files relative to it
+//and can never reach anything outside of it
+//files are read through memory mappings, nothing holds more than a row of cells besides the matrix itself
+public class MatrixFiles {
+    private static final int CSV_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path directory;
+
+    //the directory is made by the first export
+    public MatrixFiles(Path directory) {
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    public record Dimensions(int rows, int cols) {
+    }
+
+    public Path resolve(String fileName) throws MatrixFileException {
+        Path file = directory.resolve(fileName).normalize();
+        if (!file.startsWith(directory) || file.equals(directory)) {
+            throw new MatrixFileException("files must be inside the file directory");
+        }
+        //a symbolic link inside the directory may still lead out of it, so the part of the path that exists
+        //is checked again with every link followed, what does not exist yet is made as plain directories
+        Path existing = file;
+        while (existing.startsWith(directory) && !Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) {
+            existing = existing.getParent();
+        }
+        if (!existing.startsWith(directory)) {
+            //not even the directory exists yet
+            return file;
+        }
+        try {
+            Path realDirectory = directory.toRealPath();
+            Path realExisting = existing.toRealPath();
+            if (!realExisting.startsWith(realDirectory) || (existing.equals(file) && realExisting.equals(realDirectory))) {
+                throw new MatrixFileException("files must be inside the file directory");
+            }
+        } catch (IOException e) {
+            //a link that leads nowhere would be written through on export
+            throw new MatrixFileException("files must be inside the file directory", e);
+        }
+        return file;
+    }
+
+    //the dimensions of the matrix in a file, so it can be allocated before it is loaded
+    public Dimensions readDimensions(Path file, MatrixFileFormat format) throws MatrixFileException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedInput input = new MappedInput(channel);
+            return format == MatrixFileFormat.CSV ? csvDimensions(input) : binaryDimensions(input);
+        } catch (IOException e) {
+            throw new MatrixFileException("could not read " + directory.relativize(file), e);
+        }
+    }
+
+    //target has the dimensions readDimensions returned
+    public void load(Path file, MatrixFileFormat format, Matrix target) throws MatrixFileException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedInput input = new MappedInput(channel);
+            if (format == MatrixFileFormat.CSV) {
+                loadCsv(input, target);
+            } else {
+                loadBinary(input, target);
+            }
+        } catch (IOException e) {
+            throw new MatrixFileException("could not read " + directory.relativize(file), e);
+        }
+    }
+
+    //written to a temporary file and renamed once complete, so nobody ever sees half an export
+    //every export gets a fresh temporary file, two exports to the same file never write into each other
+    public void save(Matrix matrix, Path file, MatrixFileFormat format) throws MatrixFileException {
+        Path temporary = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temporary = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (format == MatrixFileFormat.CSV) {
+                    saveCsv(matrix, channel);
+                } else {
+                    saveBinary(matrix, channel);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            try {
+                if (temporary != null) {
+                    Files.deleteIfExists(temporary);
+                }
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new MatrixFileException("could not write " + directory.relativize(file), e);
+        }
+    }
+
+    private static Dimensions binaryDimensions(MappedInput input) throws IOException, MatrixFileException {
+        if (input.size() < MatrixFileFormat.HEADER_SIZE) {
+            throw new MatrixFileException("file is too short for a matrix");
+        }
+        int[] header = new int[3];
+        input.readInts(header, 0, header.length);
+        if (header[0] != MatrixFileFormat.MAGIC) {
+            throw new MatrixFileException("file is not a binary matrix");
+        }
+        if (header[1] < 1 || header[2] < 1 ||
+                input.size() != MatrixFileFormat.HEADER_SIZE + (long) header[1] * header[2] * Integer.BYTES) {
+            throw new MatrixFileException("file size does not match the dimensions in it");
+        }
+        return new Dimensions(header[1], header[2]);
+    }
+
+    private static void loadBinary(MappedInput input, Matrix target) throws IOException, MatrixFileException {
+        Dimensions dimensions = binaryDimensions(input);
+        if (dimensions.rows() != target.getRows() || dimensions.cols() != target.getCols()) {
+            throw new MatrixFileException("file changed while it was loaded");
+        }
+        int[] row = new int[target.getCols()];
+        for (int i = 0; i < target.getRows(); ++i) {
+            input.readInts(row, 0, row.length);
+            target.setRow(i, row);
+        }
+    }
+
+    //rows are the lines that have something on them, cols are the values on the first one
+    //the second pass checks that every other row has as many
+    private static Dimensions csvDimensions(MappedInput input) throws IOException, MatrixFileException {
+        long rows = 0;
+        int cols = 0;
+        boolean lineHasContent = false;
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == '\n') {
+                if (lineHasContent) {
+                    ++rows;
+                }
+                lineHasContent = false;
+            } else if (!isBlank(b)) {
+                lineHasContent = true;
+                if (rows == 0 && (b == ',' || cols == 0)) {
+                    ++cols;
+                }
+            }
+        }
+        if (lineHasContent) {
+            ++rows;
+        }
+        if (rows == 0) {
+            throw new MatrixFileException("file has no rows");
+        }
+        if (rows > Integer.MAX_VALUE) {
+            throw new MatrixFileException("file has too many rows");
+        }
+        return new Dimensions((int) rows, cols);
+    }
+
+    private static void loadCsv(MappedInput input, Matrix target) throws IOException, MatrixFileException {
+        int[] row = new int[target.getCols()];
+        int rowIndex = 0;
+        int col = 0;
+        int line = 1;
+        int b = input.read();
+        while (b != -1) {
+            while (isBlank(b)) {
+                b = input.read();
+            }
+            if (b == '\n' || b == -1) {
+                if (col != 0) {
+                    if (col != row.length) {
+                        throw new MatrixFileException("line " + line + " has " + col + " values instead of " + row.length);
+                    }
+                    if (rowIndex == target.getRows()) {
+                        throw new MatrixFileException("file changed while it was loaded");
+                    }
+                    target.setRow(rowIndex++, row);
+                    col = 0;
+                }
+                if (b == '\n') {
+                    ++line;
+                    b = input.read();
+                }
+                continue;
+            }
+
+            boolean negative = b == '-';
+            if (b == '-' || b == '+') {
+                b = input.read();
+            }
+            //accumulated as a negative number so that Integer.MIN_VALUE fits too
+            long value = 0;
+            int digits = 0;
+            while (b >= '0' && b <= '9') {
+                value = value * 10 - (b - '0');
+                if (value < Integer.MIN_VALUE) {
+                    throw new MatrixFileException("line " + line + " has a value out of the int range");
+                }
+                ++digits;
+                b = input.read();
+            }
+            while (isBlank(b)) {
+                b = input.read();
+            }
+            if (digits == 0 || (b != ',' && b != '\n' && b != -1) || (!negative && value == Integer.MIN_VALUE)) {
+                throw new MatrixFileException("line " + line + " is not made of numbers separated by commas");
+            }
+            if (col == row.length) {
+                throw new MatrixFileException("line " + line + " has more than " + row.length + " values");
+            }
+            row[col++] = negative ? (int) value : (int) -value;
+            if (b == ',') {
+                b = input.read();
+            }
+        }
+        if (rowIndex != target.getRows()) {
+            throw new MatrixFileException("file changed while it was loaded");
+        }
+    }
+
+    //spaces, tabs and the carriage return of windows line ends
+    private static boolean isBlank(int b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    //the size is known up front, so the whole file is mapped region by region and the rows copied straight in
+    private static void saveBinary(Matrix matrix, FileChannel channel) throws IOException {
+        long size = MatrixFileFormat.HEADER_SIZE + (long) matrix.getRows() * matrix.getCols() * Integer.BYTES;
+        long regionStart = 0;
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(MappedInput.REGION_SIZE, size));
+        region.putInt(MatrixFileFormat.MAGIC);
+        region.putInt(matrix.getRows());
+        region.putInt(matrix.getCols());
+
+        int[] row = new int[matrix.getCols()];
+        for (int i = 0; i < matrix.getRows(); ++i) {
+            matrix.copyRow(i, row);
+            int offset = 0;
+            while (offset < row.length) {
+                if (!region.hasRemaining()) {
+                    region.force();
+                    regionStart += region.capacity();
+                    region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+                            Math.min(MappedInput.REGION_SIZE, size - regionStart));
+                }
+                IntBuffer cells = region.asIntBuffer();
+                int count = Math.min(row.length - offset, cells.remaining());
+                cells.put(row, offset, count);
+                region.position(region.position() + count * Integer.BYTES);
+                offset += count;
+            }
+        }
+        region.force();
+    }
+
+    //the length of a csv file is only known once it is written, so it is streamed out through a buffer
+    private static void saveCsv(Matrix matrix, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CSV_BUFFER_SIZE);
+        int[] row = new int[matrix.getCols()];
+        for (int i = 0; i < matrix.getRows(); ++i) {
+            matrix.copyRow(i, row);
+            for (int j = 0; j < row.length; ++j) {
+                if (buffer.remaining() < MatrixRenderer.MAX_CELL_LENGTH) {
+                    drain(channel, buffer);
+                }
+                MatrixRenderer.putInt(buffer, row[j]);
+                buffer.put(j == row.length - 1 ? (byte) '\n' : (byte) ',');
+            }
+        }
+        drain(channel, buffer);
+        channel.force(false);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
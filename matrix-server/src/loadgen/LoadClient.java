@@ -0,0 +1,177 @@
+package loadgen;
+
+import point.PointBatch;
+import protocol.BinaryProtocol;
+import protocol.FrameCodec;
+import protocol.InvalidFrameException;
+import protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+//one simulated client, it sets up its matrix, switches the reply mode and then sends batches on a fixed schedule
+//no matter whether the replies to the earlier ones are back yet
+class LoadClient {
+    //different batches so the server doesn't keep writing the very same cells
+    private static final int DISTINCT_BATCHES = 16;
+    private static final int INITIAL_READ_BUFFER_SIZE = 64 * 1024;
+
+    enum State { SETTING_UP, SWITCHING_MODE, RUNNING }
+
+    private final SocketChannel channel;
+    private final ByteBuffer[] batches;
+    private final long intervalNanos;
+    private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    //when each request still waiting for its reply should have been sent, in sending order
+    private long[] intendedSendTimes = new long[1024];
+    private int oldestRequest;
+    private int outstanding;
+    private long nextSendNanos;
+    private int nextBatch;
+    private State state;
+
+    LoadClient(SocketChannel channel, LoadConfig config, Random random, long intervalNanos) {
+        this.channel = channel;
+        this.intervalNanos = intervalNanos;
+        this.batches = new ByteBuffer[DISTINCT_BATCHES];
+        for (int i = 0; i < DISTINCT_BATCHES; ++i) {
+            batches[i] = encodeBatch(config, random);
+        }
+        this.state = State.SETTING_UP;
+        enqueueControl(config.protocol() == Protocol.BINARY ?
+                FrameCodec.encode(BinaryProtocol.encodeHandshake(config.rows(), config.cols())) :
+                FrameCodec.encode(config.rows() + " " + config.cols()));
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    int getOutstanding() {
+        return outstanding;
+    }
+
+    long getNextSendNanos() {
+        return nextSendNanos;
+    }
+
+    void start(long firstSendNanos) {
+        state = State.RUNNING;
+        nextSendNanos = firstSendNanos;
+    }
+
+    void switchMode(LoadConfig config) {
+        state = State.SWITCHING_MODE;
+        if (config.protocol() == Protocol.BINARY) {
+            byte mode = config.delta() ? BinaryProtocol.MODE_DELTA : BinaryProtocol.MODE_FULL;
+            enqueueControl(FrameCodec.encode(BinaryProtocol.encodeMode(mode)));
+        } else {
+            enqueueControl(FrameCodec.encode(config.delta() ? "mode delta" : "mode full"));
+        }
+    }
+
+    //queues every batch that is due by now, returns how many
+    int sendDue(long now) {
+        int sent = 0;
+        while (nextSendNanos <= now) {
+            enqueueRequest(batches[nextBatch].duplicate(), nextSendNanos);
+            nextBatch = (nextBatch + 1) % batches.length;
+            nextSendNanos += intervalNanos;
+            ++sent;
+        }
+        return sent;
+    }
+
+    //returns true if nothing is left to write
+    boolean flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer head = writeQueue.peekFirst();
+            channel.write(head);
+            if (head.hasRemaining()) {
+                return false;
+            }
+            writeQueue.pollFirst();
+        }
+        return true;
+    }
+
+    boolean hasPendingWrites() {
+        return !writeQueue.isEmpty();
+    }
+
+    //reads whatever arrived and hands every complete reply to the listener with the time its request was due
+    void read(ReplyListener listener) throws IOException, InvalidFrameException {
+        if (channel.read(readBuffer) < 0) {
+            throw new IOException("server closed the connection");
+        }
+        readBuffer.flip();
+        ByteBuffer payload;
+        while ((payload = FrameCodec.nextFrame(readBuffer)) != null) {
+            long intended = intendedSendTimes[oldestRequest];
+            oldestRequest = (oldestRequest + 1) % intendedSendTimes.length;
+            --outstanding;
+            listener.onReply(this, payload, intended);
+        }
+        readBuffer.compact();
+        if (readBuffer.position() >= FrameCodec.HEADER_SIZE) {
+            int needed = FrameCodec.HEADER_SIZE + FrameCodec.frameLength(readBuffer, 0);
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(needed);
+                readBuffer.flip();
+                bigger.put(readBuffer);
+                readBuffer = bigger;
+            }
+        }
+    }
+
+    //a set-up or mode request, they are not measured
+    private void enqueueControl(ByteBuffer frame) {
+        enqueueRequest(frame, -1);
+    }
+
+    private void enqueueRequest(ByteBuffer frame, long intendedSendNanos) {
+        if (outstanding == intendedSendTimes.length) {
+            long[] bigger = new long[intendedSendTimes.length * 2];
+            for (int i = 0; i < outstanding; ++i) {
+                bigger[i] = intendedSendTimes[(oldestRequest + i) % intendedSendTimes.length];
+            }
+            intendedSendTimes = bigger;
+            oldestRequest = 0;
+        }
+        intendedSendTimes[(oldestRequest + outstanding) % intendedSendTimes.length] = intendedSendNanos;
+        ++outstanding;
+        writeQueue.addLast(frame);
+    }
+
+    private static ByteBuffer encodeBatch(LoadConfig config, Random random) {
+        if (config.protocol() == Protocol.BINARY) {
+            PointBatch points = new PointBatch(config.batchSize());
+            for (int i = 0; i < config.batchSize(); ++i) {
+                points.add(random.nextInt(config.rows()), random.nextInt(config.cols()), random.nextInt(1000));
+            }
+            return FrameCodec.encode(BinaryProtocol.encodePoints(points));
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < config.batchSize(); ++i) {
+            text.append(random.nextInt(config.rows()) + 1).append(' ')
+                    .append(random.nextInt(config.cols()) + 1).append(' ')
+                    .append(random.nextInt(1000)).append(' ');
+        }
+        return FrameCodec.encode(text.toString().trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    interface ReplyListener {
+        //intendedSendNanos is -1 for set-up and mode requests
+        void onReply(LoadClient client, ByteBuffer payload, long intendedSendNanos);
+    }
+}
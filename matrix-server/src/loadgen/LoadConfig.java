@@ -0,0 +1,56 @@
+package loadgen;
+
+import protocol.Protocol;
+
+//rate is in batches per second over all clients together
+public record LoadConfig(String host, int port, int clients, int rows, int cols, int batchSize, double rate,
+                         int warmupSeconds, int durationSeconds, Protocol protocol, boolean delta) {
+
+    public static final String USAGE = "options: --host localhost --port 6666 --clients 16 --rows 100 --cols 100" +
+            " --batch 100 --rate 2000 --warmup 5 --duration 30 --protocol binary|text --reply delta|full";
+
+    public static LoadConfig parse(String[] args) {
+        String host = "localhost";
+        int port = 6666;
+        int clients = 16;
+        int rows = 100;
+        int cols = 100;
+        int batchSize = 100;
+        double rate = 2000;
+        int warmupSeconds = 5;
+        int durationSeconds = 30;
+        Protocol protocol = Protocol.BINARY;
+        boolean delta = true;
+
+        if (args.length % 2 != 0) {
+            throw new IllegalArgumentException("every option needs a value");
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host" -> host = value;
+                case "--port" -> port = Integer.parseInt(value);
+                case "--clients" -> clients = Integer.parseInt(value);
+                case "--rows" -> rows = Integer.parseInt(value);
+                case "--cols" -> cols = Integer.parseInt(value);
+                case "--batch" -> batchSize = Integer.parseInt(value);
+                case "--rate" -> rate = Double.parseDouble(value);
+                case "--warmup" -> warmupSeconds = Integer.parseInt(value);
+                case "--duration" -> durationSeconds = Integer.parseInt(value);
+                case "--protocol" -> protocol = Protocol.valueOf(value.toUpperCase());
+                case "--reply" -> delta = switch (value) {
+                    case "delta" -> true;
+                    case "full" -> false;
+                    default -> throw new IllegalArgumentException("reply must be delta or full");
+                };
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (clients < 1 || rows < 1 || cols < 1 || batchSize < 1 || rate <= 0 || warmupSeconds < 0 ||
+                durationSeconds < 1) {
+            throw new IllegalArgumentException("counts, dimensions, rate and duration must be positive");
+        }
+        return new LoadConfig(host, port, clients, rows, cols, batchSize, rate, warmupSeconds, durationSeconds,
+                protocol, delta);
+    }
+}
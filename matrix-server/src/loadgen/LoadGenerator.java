@@ -0,0 +1,169 @@
+package loadgen;
+
+import metrics.LatencyHistogram;
+import protocol.InvalidFrameException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//drives many clients against a running server from a single selector thread and reports throughput and latency
+//the load is open loop: every client sends on a fixed schedule whether or not its replies are back,
+//and latency counts from the time a request should have been sent, so a stalled server can't hide its stalls
+//by slowing the clients down
+public class LoadGenerator {
+    private static final long SET_UP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long SEED = 42;
+
+    private final LoadConfig config;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final List<LoadClient> clients = new ArrayList<>();
+    private int readyClients;
+    private long sent;
+    private long replies;
+    private long errors;
+    private long measureStartNanos = Long.MAX_VALUE;
+    private long measureEndNanos = Long.MAX_VALUE;
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) {
+        LoadConfig config;
+        try {
+            config = LoadConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(LoadConfig.USAGE);
+            return;
+        }
+        try {
+            System.out.println(new LoadGenerator(config).run());
+        } catch (IOException | InvalidFrameException e) {
+            System.out.println("load run failed: " + e.getMessage());
+        }
+    }
+
+    public String run() throws IOException, InvalidFrameException {
+        long intervalNanos = (long) (config.clients() * 1_000_000_000.0 / config.rate());
+        Random random = new Random(SEED);
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < config.clients(); ++i) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(config.host(), config.port()));
+                channel.configureBlocking(false);
+                LoadClient client = new LoadClient(channel, config, random, intervalNanos);
+                channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, client);
+                clients.add(client);
+            }
+
+            long setUpDeadline = System.nanoTime() + SET_UP_TIMEOUT_NANOS;
+            while (readyClients < clients.size()) {
+                if (System.nanoTime() > setUpDeadline) {
+                    throw new IOException("only " + readyClients + " of " + clients.size() + " clients got set up");
+                }
+                poll(selector, TimeUnit.MILLISECONDS.toNanos(10));
+            }
+
+            //spread the first sends over one interval so the clients don't fire in lockstep
+            long start = System.nanoTime();
+            for (int i = 0; i < clients.size(); ++i) {
+                clients.get(i).start(start + intervalNanos * i / clients.size());
+            }
+            measureStartNanos = start + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+            measureEndNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+
+            long now;
+            while ((now = System.nanoTime()) < measureEndNanos) {
+                long nextSend = Long.MAX_VALUE;
+                for (LoadClient client : clients) {
+                    sent += client.sendDue(Math.min(now, measureEndNanos - 1));
+                    nextSend = Math.min(nextSend, client.getNextSendNanos());
+                }
+                poll(selector, Math.min(nextSend, measureEndNanos) - System.nanoTime());
+            }
+
+            long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+            while (outstanding() > 0 && System.nanoTime() < drainDeadline) {
+                poll(selector, TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            long lost = outstanding();
+            for (LoadClient client : clients) {
+                client.getChannel().close();
+            }
+            return report(lost);
+        }
+    }
+
+    private void poll(Selector selector, long timeoutNanos) throws IOException, InvalidFrameException {
+        long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+        for (SelectionKey key : selector.keys()) {
+            LoadClient client = (LoadClient) key.attachment();
+            key.interestOps(client.hasPendingWrites() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+        if (timeoutMillis <= 0) {
+            selector.selectNow();
+        } else {
+            selector.select(timeoutMillis);
+        }
+        for (SelectionKey key : selector.selectedKeys()) {
+            LoadClient client = (LoadClient) key.attachment();
+            if (key.isWritable()) {
+                client.flush();
+            }
+            if (key.isReadable()) {
+                client.read(this::onReply);
+            }
+        }
+        selector.selectedKeys().clear();
+    }
+
+    private void onReply(LoadClient client, ByteBuffer payload, long intendedSendNanos) {
+        switch (client.getState()) {
+            case SETTING_UP -> client.switchMode(config);
+            case SWITCHING_MODE -> {
+                client.start(Long.MAX_VALUE);
+                ++readyClients;
+            }
+            case RUNNING -> {
+                long now = System.nanoTime();
+                ++replies;
+                //matrices and deltas start with a number, anything starting with a letter is an error message
+                if (payload.hasRemaining() && Character.isLetter(payload.get(payload.position()))) {
+                    ++errors;
+                }
+                if (intendedSendNanos >= measureStartNanos && intendedSendNanos < measureEndNanos) {
+                    latency.record(now - intendedSendNanos);
+                }
+            }
+        }
+    }
+
+    private long outstanding() {
+        long outstanding = 0;
+        for (LoadClient client : clients) {
+            outstanding += client.getOutstanding();
+        }
+        return outstanding;
+    }
+
+    private String report(long lost) {
+        double seconds = config.durationSeconds();
+        double throughput = latency.getCount() / seconds;
+        return String.format("%d clients, %d points per batch, target %.0f batches/s, %s protocol, %s replies%n",
+                config.clients(), config.batchSize(), config.rate(), config.protocol().name().toLowerCase(),
+                config.delta() ? "delta" : "full") +
+                String.format("sent %d, replied %d, error replies %d, lost %d%n", sent, replies, errors, lost) +
+                String.format("measured %.1f batches/s, %.0f points/s over %d s%n", throughput,
+                        throughput * config.batchSize(), config.durationSeconds()) +
+                "latency " + latency.summary();
+    }
+}
@@ -0,0 +1,153 @@
+package matrix;
+
+import point.PointBatch;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class FillEngine {
+    //below this many points splitting the work costs more than the writes themselves
+    private static final int SEQUENTIAL_THRESHOLD = 4096;
+    //the tasks block on row locks, so they get a pool of their own, on the common pool a contended
+    //fill would hold up every other user of it
+    private static final ForkJoinPool FILL_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final ForkJoinPool pool;
+
+    public FillEngine() {
+        this(FILL_POOL);
+    }
+
+    public FillEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    //points must be within the matrix, a cell passed more than once ends up with its last value
+    public void fill(Matrix matrix, PointBatch points) {
+        fill(matrix, points, null);
+    }
+
+    //if previous is not null, previous[i] gets the value the cell of point i had right before point i was written
+    //the rows being written are locked, so other connections can fill and read the same matrix at the same time
+    public void fill(Matrix matrix, PointBatch points, int[] previous) {
+        fill(matrix, points, previous, null);
+    }
+
+    //if underLock is not null, all rows of the batch are locked at once and it runs before any point is written,
+    //so whatever it records about the batch is ordered the same way as the writes of other batches to these rows
+    public void fill(Matrix matrix, PointBatch points, int[] previous, Runnable underLock) {
+        if (points.size() == 0) {
+            return;
+        }
+        boolean sequential = points.size() < SEQUENTIAL_THRESHOLD || !matrix.supportsConcurrentRowWrites();
+        if (!sequential && underLock == null) {
+            fillParallel(matrix, points, previous, true);
+            return;
+        }
+
+        int fromRow = Integer.MAX_VALUE;
+        int toRow = Integer.MIN_VALUE;
+        for (int i = 0; i < points.size(); ++i) {
+            fromRow = Math.min(fromRow, points.getRow(i));
+            toRow = Math.max(toRow, points.getRow(i));
+        }
+        long[] stamps = matrix.getRowLocks().writeLock(fromRow, toRow);
+        try {
+            if (underLock != null) {
+                underLock.run();
+            }
+            if (sequential) {
+                for (int i = 0; i < points.size(); ++i) {
+                    insert(matrix, points, i, previous);
+                }
+            } else {
+                fillParallel(matrix, points, previous, false);
+            }
+        } finally {
+            matrix.getRowLocks().unlockWrite(fromRow, toRow, stamps);
+        }
+    }
+
+    private void fillParallel(Matrix matrix, PointBatch points, int[] previous, boolean lockRows) {
+        //counting sort by row, stable so that a cell passed twice still ends up with its last value
+        int[] rowStart = new int[matrix.getRows() + 1];
+        for (int i = 0; i < points.size(); ++i) {
+            ++rowStart[points.getRow(i) + 1];
+        }
+        for (int i = 1; i < rowStart.length; ++i) {
+            rowStart[i] += rowStart[i - 1];
+        }
+        int[] byRow = new int[points.size()];
+        int[] next = rowStart.clone();
+        for (int i = 0; i < points.size(); ++i) {
+            byRow[next[points.getRow(i)]++] = i;
+        }
+
+        pool.invoke(new RowRangeFill(matrix, points, previous, byRow, rowStart, lockRows, 0, matrix.getRows()));
+    }
+
+    private static void insert(Matrix matrix, PointBatch points, int point, int[] previous) {
+        int previousValue = matrix.insertValue(points.getRow(point), points.getCol(point), points.getValue(point));
+        if (previous != null) {
+            previous[point] = previousValue;
+        }
+    }
+
+    //every task owns a distinct range of rows so no two tasks ever write the same cell
+    private static class RowRangeFill extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        //the tasks are never serialized
+        private final transient Matrix matrix;
+        private final transient PointBatch points;
+        private final int[] previous;
+        private final int[] byRow;
+        private final int[] rowStart;
+        //false when the caller already holds the locks of all rows
+        private final boolean lockRows;
+        private final int fromRow;
+        private final int toRow;
+
+        RowRangeFill(Matrix matrix, PointBatch points, int[] previous, int[] byRow, int[] rowStart,
+                     boolean lockRows, int fromRow, int toRow) {
+            this.matrix = matrix;
+            this.points = points;
+            this.previous = previous;
+            this.byRow = byRow;
+            this.rowStart = rowStart;
+            this.lockRows = lockRows;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            int pointsInRange = rowStart[toRow] - rowStart[fromRow];
+            if (pointsInRange <= SEQUENTIAL_THRESHOLD || toRow - fromRow == 1) {
+                if (pointsInRange == 0) {
+                    return;
+                }
+                if (!lockRows) {
+                    insertRange();
+                    return;
+                }
+                long[] stamps = matrix.getRowLocks().writeLock(fromRow, toRow - 1);
+                try {
+                    insertRange();
+                } finally {
+                    matrix.getRowLocks().unlockWrite(fromRow, toRow - 1, stamps);
+                }
+                return;
+            }
+            int middleRow = (fromRow + toRow) >>> 1;
+            invokeAll(new RowRangeFill(matrix, points, previous, byRow, rowStart, lockRows, fromRow, middleRow),
+                    new RowRangeFill(matrix, points, previous, byRow, rowStart, lockRows, middleRow, toRow));
+        }
+
+        private void insertRange() {
+            for (int i = rowStart[fromRow]; i < rowStart[toRow]; ++i) {
+                insert(matrix, points, byRow[i], previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package matrix;
+
+public class FlatMatrixStorage implements MatrixStorage {
+    //some VMs reserve a few header words in arrays
+    private static final long MAX_CELLS = Integer.MAX_VALUE - 8;
+
+    private final int cols;
+    private final int[] cells;
+
+    public FlatMatrixStorage(int rows, int cols) {
+        if ((long) rows * cols > MAX_CELLS) {
+            throw new IllegalArgumentException("matrix is too big for a single array");
+        }
+        this.cols = cols;
+        this.cells = new int[rows * cols];
+    }
+
+    //takes over the array, it must hold rows * cols cells in row-major order
+    FlatMatrixStorage(int cols, int[] cells) {
+        this.cols = cols;
+        this.cells = cells;
+    }
+
+    @Override
+    public int get(int row, int col) {
+        return cells[row * cols + col];
+    }
+
+    @Override
+    public int set(int row, int col, int value) {
+        int index = row * cols + col;
+        int previous = cells[index];
+        cells[index] = value;
+        return previous;
+    }
+
+    @Override
+    public void copyRow(int row, int cols, int[] target, int offset) {
+        System.arraycopy(cells, row * this.cols, target, offset, cols);
+    }
+
+    @Override
+    public void setRow(int row, int cols, int[] source, int offset) {
+        System.arraycopy(source, offset, cells, row * this.cols, cols);
+    }
+}
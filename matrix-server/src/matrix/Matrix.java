@@ -3,31 +3,138 @@ package matrix;
 import point.Point;
 
 public class Matrix {
+    //a sparse entry takes several times the memory of a dense cell, past this fill ratio dense is smaller
+    private static final int MAX_SPARSE_FILL_DIVISOR = 8;
+
     private int rows;
     private int cols;
-    private int[][] matrix;
+    private volatile StorageType storageType;
+    private volatile MatrixStorage storage;
+    private final RowLocks rowLocks;
 
   public Matrix(int rows, int cols) {
+      this(rows, cols, null);
+  }
+
+  //storage type may be null to pick one by the dimensions
+  public Matrix(int rows, int cols, StorageType storageType) {
       if (rows < 1 || cols < 1){
           throw new IllegalArgumentException("dimensions must be positive");
       }
       this.rows = rows;
       this.cols = cols;
-      this.matrix = new int[rows][cols];
+      this.storageType = storageType == null ? StorageType.forDimensions(rows, cols) : storageType;
+      this.storage = MatrixStorage.create(this.storageType, rows, cols);
+      this.rowLocks = new RowLocks(rows);
+  }
+
+  //wraps the array without copying it, it must hold rows * cols cells in row-major order
+  public static Matrix fromRowMajor(int rows, int cols, int[] cells) {
+      if ((long) rows * cols != cells.length) {
+          throw new IllegalArgumentException("cells do not match the dimensions");
+      }
+      return new Matrix(rows, cols, StorageType.FLAT, new FlatMatrixStorage(cols, cells));
+  }
+
+  private Matrix(int rows, int cols, StorageType storageType, MatrixStorage storage) {
+      this.rows = rows;
+      this.cols = cols;
+      this.storageType = storageType;
+      this.storage = storage;
+      this.rowLocks = new RowLocks(rows);
   }
 
 
 
   public void insertValue(Point point) {
-        matrix[point.getX()][point.getY()] = point.getValue();
+        insertValue(point.getX(), point.getY(), point.getValue());
+  }
 
+  //returns the value the cell had before
+  //if other threads may use the matrix, the caller holds the write lock of the row
+  public int insertValue(int row, int col, int value) {
+        int previous = storage.set(row, col, value);
+        if (storage instanceof SparseMatrixStorage sparse &&
+                (long) sparse.size() * MAX_SPARSE_FILL_DIVISOR > (long) rows * cols) {
+            densify(sparse);
+        }
+        return previous;
+  }
+
+  //false while the matrix is sparse, then it must be filled from a single thread
+  public boolean supportsConcurrentRowWrites() {
+        return storage.supportsConcurrentRowWrites();
+  }
+
+  public int getValue(int row, int col) {
+        return storage.get(row, col);
+  }
+
+  //a copy of all cells in row-major order
+  public int[] toRowMajor() {
+      if ((long) rows * cols > Integer.MAX_VALUE - 8) {
+          throw new IllegalArgumentException("matrix is too big for a single array");
+      }
+      int[] cells = new int[rows * cols];
+      if (storage instanceof SparseMatrixStorage sparse) {
+          //a sparse matrix is never shared, so nobody else writes it
+          //scattering the few set cells beats looking up every single one
+          sparse.copyTo(new FlatMatrixStorage(cols, cells));
+          return cells;
+      }
+      for (int i = 0; i < rows; ++i) {
+          long stamp = rowLocks.readLock(i);
+          try {
+              storage.copyRow(i, cols, cells, i * cols);
+          } finally {
+              rowLocks.unlockRead(i, stamp);
+          }
+      }
+      return cells;
+  }
+
+  //copies one row into target under its read lock, target holds at least cols cells
+  public void copyRow(int row, int[] target) {
+      copyRow(row, target, 0);
+  }
+
+  //copies one row into target from offset on under its read lock
+  public void copyRow(int row, int[] target, int offset) {
+      long stamp = rowLocks.readLock(row);
+      try {
+          storage.copyRow(row, cols, target, offset);
+      } finally {
+          rowLocks.unlockRead(row, stamp);
+      }
+  }
+
+  //overwrites one row with the first cols cells of source under its write lock
+  public void setRow(int row, int[] source) {
+      long[] stamps = rowLocks.writeLock(row, row);
+      try {
+          storage.setRow(row, cols, source, 0);
+          if (storage instanceof SparseMatrixStorage sparse &&
+                  (long) sparse.size() * MAX_SPARSE_FILL_DIVISOR > (long) rows * cols) {
+              densify(sparse);
+          }
+      } finally {
+          rowLocks.unlockWrite(row, row, stamps);
+      }
   }
 
   public String getMatrixAsString(){
+      return getRowsAsString(0, rows);
+  }
+
+  //rows from fromRow inclusive to toRow exclusive, 0 based
+  public String getRowsAsString(int fromRow, int toRow){
+      if (fromRow < 0 || toRow > rows || fromRow > toRow) {
+          throw new IndexOutOfBoundsException("rows " + fromRow + " to " + toRow + " are outside the matrix");
+      }
       StringBuilder matrixInString = new StringBuilder();
-      for (int i = 0 ; i < rows ; ++i) {
+      for (int i = fromRow ; i < toRow ; ++i) {
           for (int j = 0 ; j < cols ; ++j){
-              matrixInString.append(String.valueOf(matrix[i][j] + " "));
+              matrixInString.append(String.valueOf(storage.get(i, j) + " "));
           }
           matrixInString.append('\n');
       }
@@ -41,4 +148,27 @@ public class Matrix {
     public int getRows() {
         return rows;
     }
+
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
+    public RowLocks getRowLocks() {
+        return rowLocks;
+    }
+
+    //a matrix has to be dense before other threads may write different rows of it at once
+    public void makeDense() {
+        if (storage instanceof SparseMatrixStorage sparse) {
+            densify(sparse);
+        }
+    }
+
+    private void densify(SparseMatrixStorage sparse) {
+        StorageType denseType = StorageType.denseForDimensions(rows, cols);
+        MatrixStorage dense = MatrixStorage.create(denseType, rows, cols);
+        sparse.copyTo(dense);
+        this.storage = dense;
+        this.storageType = denseType;
+    }
 }
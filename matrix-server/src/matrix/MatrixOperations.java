@@ -0,0 +1,236 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//whole-matrix kernels, they read their inputs a few rows at a time into buffers of their own and split the work
+//into row or column ranges on a fork-join pool, the inner loops run over contiguous ints so the JIT can vectorize them
+//only the result is as big as a matrix, admission control reserves it, the inputs are never copied whole
+//int results wrap around on overflow like int arithmetic does, the sums are kept in longs
+public class MatrixOperations {
+    //the cells a task has to touch before it is worth splitting
+    private static final int SEQUENTIAL_CELLS = 64 * 1024;
+    //a 64x64 block of ints is 16 KB, it keeps a transpose inside the caches and bounds the rows a multiplication buffers
+    private static final int BLOCK = 64;
+    //a multiplication can keep every worker busy for seconds, so it does not run on the common pool
+    private static final ForkJoinPool OPERATIONS_POOL =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final ForkJoinPool pool;
+
+    public MatrixOperations() {
+        this(OPERATIONS_POOL);
+    }
+
+    public MatrixOperations(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public Matrix add(Matrix first, Matrix second) {
+        if (first.getRows() != second.getRows() || first.getCols() != second.getCols()) {
+            throw new IllegalArgumentException("only matrices with the same dimensions can be added");
+        }
+        int cols = first.getCols();
+        int[] sum = new int[checkedCells(first.getRows(), cols)];
+        parallelFor(0, first.getRows(), cols, (from, to) -> {
+            int[] a = new int[cols];
+            int[] b = new int[cols];
+            for (int i = from; i < to; ++i) {
+                first.copyRow(i, a);
+                second.copyRow(i, b);
+                int rowStart = i * cols;
+                for (int j = 0; j < cols; ++j) {
+                    sum[rowStart + j] = a[j] + b[j];
+                }
+            }
+        });
+        return Matrix.fromRowMajor(first.getRows(), cols, sum);
+    }
+
+    public Matrix multiply(Matrix first, Matrix second) {
+        if (first.getCols() != second.getRows()) {
+            throw new IllegalArgumentException("columns of the first matrix must match rows of the second");
+        }
+        int n = first.getRows();
+        int inner = first.getCols();
+        int m = second.getCols();
+        if ((long) n * m > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("product is too big");
+        }
+        int[] product = new int[n * m];
+        int strips = (n + BLOCK - 1) / BLOCK;
+        //a task gets whole strips of BLOCK rows, every strip reads all of the second matrix once
+        //a strip costs about BLOCK * inner * m multiplications
+        int cost = (int) Math.min(Integer.MAX_VALUE, (long) BLOCK * inner * m);
+        int stripCells = checkedCells(Math.min(BLOCK, n), inner);
+        int blockCells = checkedCells(Math.min(BLOCK, inner), m);
+        parallelFor(0, strips, cost, (fromStrip, toStrip) -> {
+            int[] a = new int[stripCells];
+            int[] b = new int[blockCells];
+            for (int strip = fromStrip; strip < toStrip; ++strip) {
+                int iStart = strip * BLOCK;
+                int iEnd = Math.min(iStart + BLOCK, n);
+                for (int i = iStart; i < iEnd; ++i) {
+                    first.copyRow(i, a, (i - iStart) * inner);
+                }
+                for (int kk = 0; kk < inner; kk += BLOCK) {
+                    int kEnd = Math.min(kk + BLOCK, inner);
+                    for (int k = kk; k < kEnd; ++k) {
+                        second.copyRow(k, b, (k - kk) * m);
+                    }
+                    //the buffered rows of the second matrix are reused by every row of the strip,
+                    //the innermost loop runs over whole rows of them and of the product
+                    for (int i = iStart; i < iEnd; ++i) {
+                        int rowOfProduct = i * m;
+                        int rowOfA = (i - iStart) * inner;
+                        for (int k = kk; k < kEnd; ++k) {
+                            int aik = a[rowOfA + k];
+                            int rowOfB = (k - kk) * m;
+                            for (int j = 0; j < m; ++j) {
+                                product[rowOfProduct + j] += aik * b[rowOfB + j];
+                            }
+                        }
+                    }
+                }
+            }
+        });
+        return Matrix.fromRowMajor(n, m, product);
+    }
+
+    public Matrix transpose(Matrix matrix) {
+        int rows = matrix.getRows();
+        int cols = matrix.getCols();
+        int[] transposed = new int[checkedCells(rows, cols)];
+        //blocks keep both the reads and the strided writes inside a few cache lines
+        parallelFor(0, rows, cols, (from, to) -> {
+            int[] source = new int[Math.min(BLOCK, to - from) * cols];
+            for (int ii = from; ii < to; ii += BLOCK) {
+                int iEnd = Math.min(ii + BLOCK, to);
+                for (int i = ii; i < iEnd; ++i) {
+                    matrix.copyRow(i, source, (i - ii) * cols);
+                }
+                for (int jj = 0; jj < cols; jj += BLOCK) {
+                    int jEnd = Math.min(jj + BLOCK, cols);
+                    for (int i = ii; i < iEnd; ++i) {
+                        int rowOfSource = (i - ii) * cols;
+                        for (int j = jj; j < jEnd; ++j) {
+                            transposed[j * rows + i] = source[rowOfSource + j];
+                        }
+                    }
+                }
+            }
+        });
+        return Matrix.fromRowMajor(cols, rows, transposed);
+    }
+
+    public long[] rowSums(Matrix matrix) {
+        int cols = matrix.getCols();
+        long[] sums = new long[matrix.getRows()];
+        parallelFor(0, matrix.getRows(), cols, (from, to) -> {
+            int[] row = new int[cols];
+            for (int i = from; i < to; ++i) {
+                matrix.copyRow(i, row);
+                long sum = 0;
+                for (int j = 0; j < cols; ++j) {
+                    sum += row[j];
+                }
+                sums[i] = sum;
+            }
+        });
+        return sums;
+    }
+
+    public long[] colSums(Matrix matrix) {
+        int cols = matrix.getCols();
+        long[] sums = new long[cols];
+        //split by rows so that every row is read once, a task adds up its rows on its own and merges them in the end
+        parallelFor(0, matrix.getRows(), cols, (from, to) -> {
+            int[] row = new int[cols];
+            long[] partial = new long[cols];
+            for (int i = from; i < to; ++i) {
+                matrix.copyRow(i, row);
+                for (int j = 0; j < cols; ++j) {
+                    partial[j] += row[j];
+                }
+            }
+            synchronized (sums) {
+                for (int j = 0; j < cols; ++j) {
+                    sums[j] += partial[j];
+                }
+            }
+        });
+        return sums;
+    }
+
+    //returns the smallest and the biggest cell
+    public int[] minMax(Matrix matrix) {
+        int rows = matrix.getRows();
+        int cols = matrix.getCols();
+        int[] rowMin = new int[rows];
+        int[] rowMax = new int[rows];
+        parallelFor(0, rows, cols, (from, to) -> {
+            int[] row = new int[cols];
+            for (int i = from; i < to; ++i) {
+                matrix.copyRow(i, row);
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int j = 0; j < cols; ++j) {
+                    min = Math.min(min, row[j]);
+                    max = Math.max(max, row[j]);
+                }
+                rowMin[i] = min;
+                rowMax[i] = max;
+            }
+        });
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < rows; ++i) {
+            min = Math.min(min, rowMin[i]);
+            max = Math.max(max, rowMax[i]);
+        }
+        return new int[] {min, max};
+    }
+
+    private static int checkedCells(int rows, int cols) {
+        if ((long) rows * cols > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("matrix is too big for a single array");
+        }
+        return rows * cols;
+    }
+
+    private void parallelFor(int from, int to, int costPerIndex, RangeBody body) {
+        pool.invoke(new RangeTask(from, to, costPerIndex, body));
+    }
+
+    @FunctionalInterface
+    private interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int costPerIndex;
+        //the tasks are never serialized
+        private final transient RangeBody body;
+
+        RangeTask(int from, int to, int costPerIndex, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.costPerIndex = costPerIndex;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1 || (long) (to - from) * costPerIndex <= SEQUENTIAL_CELLS) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, costPerIndex, body), new RangeTask(middle, to, costPerIndex, body));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package matrix;
+
+import java.nio.ByteBuffer;
+
+//writes rows of a matrix as ASCII in the getMatrixAsString format without creating strings,
+//keeps a cursor so the output can be produced into one small buffer after another
+public class MatrixRenderer {
+    //"-2147483648 " is the longest a cell can get
+    public static final int MAX_CELL_LENGTH = 12;
+
+    private final Matrix matrix;
+    private final int toRow;
+    private int row;
+    private int col;
+
+    //rows from fromRow inclusive to toRow exclusive, 0 based
+    public MatrixRenderer(Matrix matrix, int fromRow, int toRow) {
+        if (fromRow < 0 || toRow > matrix.getRows() || fromRow > toRow) {
+            throw new IndexOutOfBoundsException("rows " + fromRow + " to " + toRow + " are outside the matrix");
+        }
+        this.matrix = matrix;
+        this.toRow = toRow;
+        this.row = fromRow;
+    }
+
+    public MatrixRenderer(Matrix matrix) {
+        this(matrix, 0, matrix.getRows());
+    }
+
+    public int remainingRows() {
+        return toRow - row;
+    }
+
+    //renders whole cells while they fit, returns true once every row is rendered
+    //the cells of a row that land in the same buffer are read under the row's read lock,
+    //so writers of other rows are never waited for
+    public boolean render(ByteBuffer target) {
+        int cols = matrix.getCols();
+        RowLocks rowLocks = matrix.getRowLocks();
+        while (row < toRow) {
+            long stamp = rowLocks.readLock(row);
+            try {
+                while (col < cols) {
+                    int value = matrix.getValue(row, col);
+                    if (target.remaining() < digitCount(value) + 1) {
+                        return false;
+                    }
+                    putInt(target, value);
+                    target.put((byte) ' ');
+                    ++col;
+                }
+            } finally {
+                rowLocks.unlockRead(row, stamp);
+            }
+            if (!target.hasRemaining()) {
+                return false;
+            }
+            target.put((byte) '\n');
+            ++row;
+            col = 0;
+        }
+        return true;
+    }
+
+    public boolean isDone() {
+        return row == toRow;
+    }
+
+    public static int digitCount(int value) {
+        if (value < 0) {
+            //MIN_VALUE has no positive counterpart, it is the longest negative anyway
+            return value == Integer.MIN_VALUE ? 11 : positiveDigitCount(-value) + 1;
+        }
+        return positiveDigitCount(value);
+    }
+
+    //the caller makes sure digitCount(value) bytes are remaining
+    public static void putInt(ByteBuffer target, int value) {
+        int length = digitCount(value);
+        int start = target.position();
+        if (target.hasArray()) {
+            writeDigits(target.array(), target.arrayOffset() + start, length, value);
+        } else {
+            byte[] digits = new byte[length];
+            writeDigits(digits, 0, length, value);
+            target.put(start, digits);
+        }
+        target.position(start + length);
+    }
+
+    private static int positiveDigitCount(int value) {
+        int digits = 1;
+        for (int bound = 10; digits < 10 && value >= bound; bound *= 10) {
+            ++digits;
+        }
+        return digits;
+    }
+
+    private static void writeDigits(byte[] target, int offset, int length, int value) {
+        long magnitude = value;
+        if (value < 0) {
+            target[offset] = '-';
+            magnitude = -magnitude;
+        }
+        for (int i = offset + length - 1; magnitude >= 10; --i) {
+            target[i] = (byte) ('0' + magnitude % 10);
+            magnitude /= 10;
+        }
+        target[value < 0 ? offset + 1 : offset] = (byte) ('0' + magnitude);
+    }
+}
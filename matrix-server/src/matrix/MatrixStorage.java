@@ -0,0 +1,37 @@
+package matrix;
+
+//where the cells of a Matrix live, rows and cols are 0 based and already checked by the matrix
+public interface MatrixStorage {
+    int get(int row, int col);
+
+    //returns the value the cell had before
+    int set(int row, int col, int value);
+
+    //copies the cells of a row into target starting at offset
+    default void copyRow(int row, int cols, int[] target, int offset) {
+        for (int col = 0; col < cols; ++col) {
+            target[offset + col] = get(row, col);
+        }
+    }
+
+    //copies cols cells from source starting at offset into a row
+    default void setRow(int row, int cols, int[] source, int offset) {
+        for (int col = 0; col < cols; ++col) {
+            set(row, col, source[offset + col]);
+        }
+    }
+
+    //whether different rows may be written from different threads at the same time
+    default boolean supportsConcurrentRowWrites() {
+        return true;
+    }
+
+    static MatrixStorage create(StorageType type, int rows, int cols) {
+        return switch (type) {
+            case FLAT -> new FlatMatrixStorage(rows, cols);
+            case TILED -> new TiledMatrixStorage(rows, cols);
+            case OFF_HEAP -> new OffHeapMatrixStorage(rows, cols);
+            case SPARSE -> new SparseMatrixStorage(cols);
+        };
+    }
+}
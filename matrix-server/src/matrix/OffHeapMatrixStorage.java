@@ -0,0 +1,46 @@
+package matrix;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+//row-major cells in direct buffers, a buffer is indexed by int so the cells are split into segments
+//of up to 2^28 ints (1 GB) each, the memory goes back when the matrix is collected
+public class OffHeapMatrixStorage implements MatrixStorage {
+    private static final int SEGMENT_BITS = 28;
+    private static final int SEGMENT_CELLS = 1 << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_CELLS - 1;
+
+    private final int cols;
+    private final IntBuffer[] segments;
+
+    public OffHeapMatrixStorage(int rows, int cols) {
+        this.cols = cols;
+        long cells = (long) rows * cols;
+        int segmentCount = (int) ((cells + SEGMENT_MASK) >>> SEGMENT_BITS);
+        this.segments = new IntBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; ++i) {
+            long segmentCells = Math.min(SEGMENT_CELLS, cells - ((long) i << SEGMENT_BITS));
+            //direct buffers come zeroed
+            segments[i] = ByteBuffer.allocateDirect((int) segmentCells * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+        }
+    }
+
+    @Override
+    public int get(int row, int col) {
+        long index = (long) row * cols + col;
+        return segments[(int) (index >>> SEGMENT_BITS)].get((int) (index & SEGMENT_MASK));
+    }
+
+    @Override
+    public int set(int row, int col, int value) {
+        long index = (long) row * cols + col;
+        IntBuffer segment = segments[(int) (index >>> SEGMENT_BITS)];
+        int offset = (int) (index & SEGMENT_MASK);
+        int previous = segment.get(offset);
+        segment.put(offset, value);
+        return previous;
+    }
+}
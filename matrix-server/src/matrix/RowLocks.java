@@ -0,0 +1,53 @@
+package matrix;
+
+import java.util.concurrent.locks.StampedLock;
+
+//the rows of a matrix split into contiguous stripes with a lock each, so readers and writers
+//of different stripes never wait for each other
+//several stripes are always locked from the lowest to the highest, which rules out deadlocks
+public class RowLocks {
+    private static final int MAX_STRIPES = 64;
+
+    private final int rowsPerStripe;
+    private final StampedLock[] stripes;
+
+    public RowLocks(int rows) {
+        int stripeCount = Math.min(rows, MAX_STRIPES);
+        this.rowsPerStripe = (rows + stripeCount - 1) / stripeCount;
+        this.stripes = new StampedLock[(rows + rowsPerStripe - 1) / rowsPerStripe];
+        for (int i = 0; i < stripes.length; ++i) {
+            stripes[i] = new StampedLock();
+        }
+    }
+
+    public int stripeOf(int row) {
+        return row / rowsPerStripe;
+    }
+
+    public long readLock(int row) {
+        return stripes[stripeOf(row)].readLock();
+    }
+
+    public void unlockRead(int row, long stamp) {
+        stripes[stripeOf(row)].unlockRead(stamp);
+    }
+
+    //locks every stripe holding a row from fromRow to toRow, both included, the stamps are indexed by stripe
+    public long[] writeLock(int fromRow, int toRow) {
+        int firstStripe = stripeOf(fromRow);
+        int lastStripe = stripeOf(toRow);
+        long[] stamps = new long[lastStripe - firstStripe + 1];
+        for (int stripe = firstStripe; stripe <= lastStripe; ++stripe) {
+            stamps[stripe - firstStripe] = stripes[stripe].writeLock();
+        }
+        return stamps;
+    }
+
+    public void unlockWrite(int fromRow, int toRow, long[] stamps) {
+        int firstStripe = stripeOf(fromRow);
+        int lastStripe = stripeOf(toRow);
+        for (int stripe = lastStripe; stripe >= firstStripe; --stripe) {
+            stripes[stripe].unlockWrite(stamps[stripe - firstStripe]);
+        }
+    }
+}
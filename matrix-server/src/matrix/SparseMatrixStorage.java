@@ -0,0 +1,126 @@
+package matrix;
+
+import java.util.Arrays;
+
+//only the non-zero cells, in an open addressing map from row * cols + col to the value
+//with linear probing and backward shift deletion so no tombstones pile up
+public class SparseMatrixStorage implements MatrixStorage {
+    private static final long EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int cols;
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public SparseMatrixStorage(int cols) {
+        this.cols = cols;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public int get(int row, int col) {
+        long key = (long) row * cols + col;
+        for (int slot = slot(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int set(int row, int col, int value) {
+        long key = (long) row * cols + col;
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                if (value == 0) {
+                    remove(slot);
+                } else {
+                    values[slot] = value;
+                }
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (value != 0) {
+            keys[slot] = key;
+            values[slot] = value;
+            //keep the table at most half full so probe sequences stay short
+            if (++size > keys.length / 2) {
+                resize(keys.length * 2);
+            }
+        }
+        return 0;
+    }
+
+    //not thread safe even for different rows, they share one table
+    @Override
+    public boolean supportsConcurrentRowWrites() {
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void copyTo(MatrixStorage target) {
+        for (int slot = 0; slot < keys.length; ++slot) {
+            if (keys[slot] != EMPTY) {
+                target.set((int) (keys[slot] / cols), (int) (keys[slot] % cols), values[slot]);
+            }
+        }
+    }
+
+    private void remove(int slot) {
+        int hole = slot;
+        for (int next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            //an entry can fill the hole only if its probe sequence started at or before the hole
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        --size;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        //the finalizer of murmur3, row major keys are far too regular to be used as they are
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+}
@@ -0,0 +1,43 @@
+package matrix;
+
+public enum StorageType {
+    //one row-major int[], the fastest for anything that fits in a single array
+    FLAT,
+    //square blocks of cells, no huge array for the collector to move and good locality for block-wise work
+    TILED,
+    //cells outside of the heap, the collector never sees them
+    OFF_HEAP,
+    //only the non-zero cells, the matrix turns it into one of the others once enough cells are set
+    SPARSE;
+
+    //below this many cells a dense matrix is small enough to not bother
+    private static final long SPARSE_MIN_CELLS = 64L * 1024;
+    //up to 64 MB of cells a single array is cheap
+    private static final long FLAT_MAX_CELLS = 16L * 1024 * 1024;
+    //from 1 GB of cells on keep them off the heap
+    private static final long OFF_HEAP_MIN_CELLS = 256L * 1024 * 1024;
+
+    //flat, tiled, off-heap or sparse
+    public static StorageType fromName(String name) {
+        return valueOf(name.toUpperCase().replace('-', '_'));
+    }
+
+    //the storage a new matrix starts with
+    public static StorageType forDimensions(int rows, int cols) {
+        if ((long) rows * cols >= SPARSE_MIN_CELLS) {
+            return SPARSE;
+        }
+        return denseForDimensions(rows, cols);
+    }
+
+    public static StorageType denseForDimensions(int rows, int cols) {
+        long cells = (long) rows * cols;
+        if (cells <= FLAT_MAX_CELLS) {
+            return FLAT;
+        }
+        if (cells < OFF_HEAP_MIN_CELLS) {
+            return TILED;
+        }
+        return OFF_HEAP;
+    }
+}
@@ -0,0 +1,46 @@
+package matrix;
+
+public class TiledMatrixStorage implements MatrixStorage {
+    //64x64 ints make a 16 KB tile, a few of them fit in L1/L2 together
+    private static final int TILE_BITS = 6;
+    private static final int TILE_SIZE = 1 << TILE_BITS;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final int tilesPerRow;
+    private final int[][] tiles;
+
+    public TiledMatrixStorage(int rows, int cols) {
+        this.tilesPerRow = (cols + TILE_MASK) >>> TILE_BITS;
+        int tileRows = (rows + TILE_MASK) >>> TILE_BITS;
+        long tileCount = (long) tileRows * tilesPerRow;
+        if (tileCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("matrix is too big to be tiled");
+        }
+        this.tiles = new int[(int) tileCount][];
+        for (int i = 0; i < tiles.length; ++i) {
+            tiles[i] = new int[TILE_SIZE * TILE_SIZE];
+        }
+    }
+
+    @Override
+    public int get(int row, int col) {
+        return tile(row, col)[offset(row, col)];
+    }
+
+    @Override
+    public int set(int row, int col, int value) {
+        int[] tile = tile(row, col);
+        int offset = offset(row, col);
+        int previous = tile[offset];
+        tile[offset] = value;
+        return previous;
+    }
+
+    private int[] tile(int row, int col) {
+        return tiles[(row >>> TILE_BITS) * tilesPerRow + (col >>> TILE_BITS)];
+    }
+
+    private static int offset(int row, int col) {
+        return ((row & TILE_MASK) << TILE_BITS) | (col & TILE_MASK);
+    }
+}
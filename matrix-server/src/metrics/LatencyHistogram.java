@@ -0,0 +1,90 @@
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//log-linear buckets in the spirit of HdrHistogram: every power of two is split into 16 sub-buckets,
+//so a recorded value is off by at most ~6% and recording is a single array increment
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    //percentile is between 0 and 100, returns the lower bound of the bucket the value falls in
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return bucketLowerBound(i);
+            }
+        }
+        return getMax();
+    }
+
+    public String summary() {
+        return String.format("count=%d mean=%.1fus p50=%dus p99=%dus p999=%dus max=%dus",
+                getCount(), getMean() / 1000,
+                TimeUnit.NANOSECONDS.toMicros(getPercentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(getPercentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(getPercentile(99.9)),
+                TimeUnit.NANOSECONDS.toMicros(getMax()));
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    static long bucketLowerBound(int index) {
+        int group = index / SUB_BUCKETS;
+        int mantissa = index % SUB_BUCKETS;
+        if (group == 0) {
+            return mantissa;
+        }
+        int exponent = group + SUB_BUCKET_BITS - 1;
+        return (1L << exponent) | ((long) mantissa << (exponent - SUB_BUCKET_BITS));
+    }
+}
@@ -0,0 +1,61 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+//makes the metrics of a server visible from outside: as an MXBean for jconsole and friends,
+//and as plain "name value" lines on http://localhost:<admin port>/metrics
+public class MetricsExporter implements AutoCloseable {
+    private static final String HOST = "localhost";
+
+    private final ObjectName objectName;
+    private final HttpServer httpServer;
+
+    //the server port tells apart the beans of several servers in one process
+    public MetricsExporter(ServerMetrics metrics, int serverPort, int adminPort) throws IOException {
+        try {
+            this.objectName = new ObjectName("matrix-server:type=ServerMetrics,port=" + serverPort);
+            MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+            beanServer.registerMBean(metrics, objectName);
+        } catch (JMException e) {
+            throw new IOException("failed to register the metrics with JMX", e);
+        }
+        this.httpServer = HttpServer.create(new InetSocketAddress(HOST, adminPort), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = render(metrics.getSnapshot()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        });
+        httpServer.start();
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            System.out.println("Error occurred while unregistering the metrics: " + e.getMessage());
+        }
+    }
+
+    private static String render(Map<String, Long> snapshot) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+            text.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//counts events and how many happened per second lately, one bucket per second of a short ring
+//a bucket is reset by the first event of a new second, an event racing that reset may get lost,
+//which is fine for a rate but the total is exact
+//nanoTime may be negative, seconds are floored so every second gets its own bucket
+public class RateMeter {
+    private static final int BUCKETS = 16;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    //seconds averaged by getRate, the current second is still filling up so it is left out
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private final LongAdder total = new LongAdder();
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray seconds = new AtomicLongArray(BUCKETS);
+
+    public void record() {
+        total.increment();
+        long second = Math.floorDiv(System.nanoTime(), NANOS_PER_SECOND);
+        int bucket = Math.floorMod(second, BUCKETS);
+        long bucketSecond = seconds.get(bucket);
+        if (bucketSecond != second && seconds.compareAndSet(bucket, bucketSecond, second)) {
+            counts.set(bucket, 0);
+        }
+        counts.incrementAndGet(bucket);
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    //events per second over the last full seconds
+    public double getRate() {
+        long currentSecond = Math.floorDiv(System.nanoTime(), NANOS_PER_SECOND);
+        long events = 0;
+        for (long second = currentSecond - RATE_WINDOW_SECONDS; second < currentSecond; ++second) {
+            int bucket = Math.floorMod(second, BUCKETS);
+            if (seconds.get(bucket) == second) {
+                events += counts.get(bucket);
+            }
+        }
+        return (double) events / RATE_WINDOW_SECONDS;
+    }
+}
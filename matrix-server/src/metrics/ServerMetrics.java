@@ -0,0 +1,172 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+//everything recorded on the hot paths is a LongAdder or a LatencyHistogram, so recording never contends
+public class ServerMetrics implements ServerMetricsMXBean {
+    //from the moment the frame is read until a worker picks it up
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram fill = new LatencyHistogram();
+    private final LatencyHistogram render = new LatencyHistogram();
+    //from the moment the frame is read until its reply is handed back to the selector
+    private final LatencyHistogram total = new LatencyHistogram();
+    //one force of the write-ahead log, every record appended since the one before goes with it
+    private final LatencyHistogram fsync = new LatencyHistogram();
+    private final LongAdder walRecords = new LongAdder();
+    private final LongAdder walBytes = new LongAdder();
+    private volatile long recoveryNanos;
+
+    //whole frames, headers included
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final RateMeter requests = new RateMeter();
+    private final LongAdder selectorWakeups = new LongAdder();
+    //values owned by other parts of the server, read only when the metrics are looked at
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getParse() {
+        return parse;
+    }
+
+    public LatencyHistogram getFill() {
+        return fill;
+    }
+
+    public LatencyHistogram getRender() {
+        return render;
+    }
+
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    public LatencyHistogram getFsync() {
+        return fsync;
+    }
+
+    public LongAdder getWalRecords() {
+        return walRecords;
+    }
+
+    public LongAdder getWalBytes() {
+        return walBytes;
+    }
+
+    public long getRecoveryNanos() {
+        return recoveryNanos;
+    }
+
+    public void setRecoveryNanos(long recoveryNanos) {
+        this.recoveryNanos = recoveryNanos;
+    }
+
+    public void recordBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void recordBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public void recordRequest() {
+        requests.record();
+    }
+
+    public void recordSelectorWakeup() {
+        selectorWakeups.increment();
+    }
+
+    //only while the server is being built, the map is not safe to change once it is read
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.getCount();
+    }
+
+    @Override
+    public double getRequestsPerSecond() {
+        return requests.getRate();
+    }
+
+    @Override
+    public long getSelectorWakeups() {
+        return selectorWakeups.sum();
+    }
+
+    @Override
+    public Map<String, Long> getSnapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        snapshot.put("bytes_in", getBytesIn());
+        snapshot.put("bytes_out", getBytesOut());
+        snapshot.put("requests", getRequests());
+        snapshot.put("requests_per_second", Math.round(getRequestsPerSecond()));
+        snapshot.put("selector_wakeups", getSelectorWakeups());
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            snapshot.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        snapshot.put("wal_records", walRecords.sum());
+        snapshot.put("wal_bytes", walBytes.sum());
+        snapshot.put("recovery_ms", TimeUnit.NANOSECONDS.toMillis(recoveryNanos));
+        putLatency(snapshot, "queue_wait", queueWait);
+        putLatency(snapshot, "parse", parse);
+        putLatency(snapshot, "fill", fill);
+        putLatency(snapshot, "render", render);
+        putLatency(snapshot, "total", total);
+        putLatency(snapshot, "fsync", fsync);
+        return snapshot;
+    }
+
+    public String report() {
+        long fsyncs = fsync.getCount();
+        long records = walRecords.sum();
+        List<String> gaugeValues = new ArrayList<>();
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            gaugeValues.add(gauge.getKey() + " " + gauge.getValue().getAsLong());
+        }
+        return "queue wait " + queueWait.summary() + System.lineSeparator() +
+                "parse      " + parse.summary() + System.lineSeparator() +
+                "fill       " + fill.summary() + System.lineSeparator() +
+                "render     " + render.summary() + System.lineSeparator() +
+                "total      " + total.summary() + System.lineSeparator() +
+                "fsync      " + fsync.summary() + System.lineSeparator() +
+                "wal        " + records + " records, " + walBytes.sum() + " bytes, " +
+                (fsyncs == 0 ? 0 : records / fsyncs) + " records per fsync" + System.lineSeparator() +
+                "recovery   " + TimeUnit.NANOSECONDS.toMillis(recoveryNanos) + " ms" + System.lineSeparator() +
+                "traffic    " + getRequests() + " requests, " + String.format("%.1f", getRequestsPerSecond()) +
+                " per second, " + getBytesIn() + " bytes in, " + getBytesOut() + " bytes out, " +
+                getSelectorWakeups() + " selector wakeups" + System.lineSeparator() +
+                "live       " + String.join(", ", gaugeValues);
+    }
+
+    private static void putLatency(Map<String, Long> snapshot, String name, LatencyHistogram histogram) {
+        snapshot.put(name + "_count", histogram.getCount());
+        snapshot.put(name + "_p50_us", TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(50)));
+        snapshot.put(name + "_p99_us", TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(99)));
+        snapshot.put(name + "_p999_us", TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(99.9)));
+        snapshot.put(name + "_max_us", TimeUnit.NANOSECONDS.toMicros(histogram.getMax()));
+    }
+}
@@ -0,0 +1,19 @@
+package metrics;
+
+import java.util.Map;
+
+//what JMX shows of ServerMetrics, latencies are in microseconds
+public interface ServerMetricsMXBean {
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getRequests();
+
+    double getRequestsPerSecond();
+
+    long getSelectorWakeups();
+
+    //every counter, gauge and latency percentile by name
+    Map<String, Long> getSnapshot();
+}
@@ -0,0 +1,13 @@
+package persistence;
+
+import point.PointBatch;
+
+//a record of the write-ahead log, rows and cols are only set for PUBLISH
+public record LogRecord(byte type, String name, int rows, int cols, PointBatch points) {
+    //a matrix was published, its points are every non-zero cell it had at that moment
+    public static final byte PUBLISH = 1;
+    //a batch of points was applied to a published matrix
+    public static final byte POINTS = 2;
+    //the name was unpublished, the record has no points
+    public static final byte UNPUBLISH = 3;
+}
@@ -0,0 +1,197 @@
+package persistence;
+
+import matrix.Matrix;
+import metrics.ServerMetrics;
+import point.PointBatch;
+import server.MatrixRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//keeps the published matrices across restarts, private matrices of a connection die with it anyway
+//every publish, unpublish and every batch of points to a published matrix goes to the write-ahead log before it is applied,
+//from time to time all published matrices are written to a snapshot and the logs before it are dropped
+public class MatrixPersistence implements AutoCloseable {
+    private static final long CHECKPOINT_INTERVAL_SECONDS = 60;
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+
+    private final Path directory;
+    private final MatrixRegistry registry;
+    private final ServerMetrics metrics;
+    private final SnapshotStore snapshots;
+    private final ScheduledExecutorService checkpointer;
+    private WriteAheadLog log;
+
+    public MatrixPersistence(Path directory, MatrixRegistry registry, ServerMetrics metrics) {
+        this.directory = directory;
+        this.registry = registry;
+        this.metrics = metrics;
+        this.snapshots = new SnapshotStore(directory);
+        this.checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //loads the newest snapshot into the registry, replays the logs written after it and starts a fresh log
+    public void recover() throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        int snapshotGeneration = snapshots.latestGeneration();
+        Map<String, Matrix> matrices = snapshotGeneration == 0 ? new LinkedHashMap<>() : snapshots.read(snapshotGeneration);
+
+        int lastGeneration = snapshotGeneration;
+        long replayed = 0;
+        List<Integer> logGenerations = PersistenceFiles.generations(directory, LOG_PREFIX, LOG_SUFFIX);
+        for (int generation : logGenerations) {
+            lastGeneration = Math.max(lastGeneration, generation);
+            if (generation <= snapshotGeneration) {
+                continue;
+            }
+            for (LogRecord record : WriteAheadLog.read(WriteAheadLog.logFile(directory, generation))) {
+                replay(matrices, record);
+                ++replayed;
+            }
+        }
+        for (Map.Entry<String, Matrix> entry : matrices.entrySet()) {
+            registry.publish(entry.getKey(), entry.getValue());
+        }
+        //the tail of the last log may be torn, so nothing is ever appended to an old log
+        log = new WriteAheadLog(directory, lastGeneration + 1, metrics);
+        metrics.setRecoveryNanos(System.nanoTime() - start);
+        System.out.println("recovered " + matrices.size() + " matrices from snapshot " + snapshotGeneration +
+                " and " + replayed + " log records in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        if (!logGenerations.isEmpty()) {
+            //folds the replayed logs into a snapshot so the next start does not replay them again
+            checkpoint();
+        }
+
+        checkpointer.scheduleWithFixedDelay(this::checkpointQuietly, CHECKPOINT_INTERVAL_SECONDS,
+                CHECKPOINT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    //publishes the matrix and logs it as one step, returns false if the name is already taken, too long or the
+    //matrix is already published, the log knows matrices only by name and would replay a second name as a copy
+    //the caller is the only one using the matrix until it is published
+    //throws IllegalArgumentException if the matrix has too many non-zero cells for a single log record
+    public boolean publish(String name, Matrix matrix) {
+        if (!MatrixRegistry.isValidName(name) || registry.get(name) != null || registry.contains(matrix)) {
+            return false;
+        }
+        long position = log.appendPublish(name, matrix, () -> registry.publish(name, matrix));
+        if (position < 0) {
+            return false;
+        }
+        log.awaitDurable(position);
+        return true;
+    }
+
+    //removes the name and logs it as one step, returns false if the name is not published for this matrix
+    public boolean unpublish(String name, Matrix matrix) {
+        if (!MatrixRegistry.isValidName(name)) {
+            return false;
+        }
+        long position = log.appendUnpublish(name, () -> registry.unpublish(name, matrix));
+        if (position < 0) {
+            return false;
+        }
+        log.awaitDurable(position);
+        return true;
+    }
+
+    //whether writes to this matrix have to be logged
+    public boolean isPersistent(String name, Matrix matrix) {
+        return name != null && registry.get(name) == matrix;
+    }
+
+    //called with the rows of the batch locked, returns the position to wait for before replying
+    //or -1 if the name was unpublished meanwhile, then the batch must not be logged under a name that
+    //may already stand for another matrix
+    public long logPoints(String name, Matrix matrix, PointBatch points) {
+        return log.appendPoints(name, points, () -> registry.get(name) == matrix);
+    }
+
+    public void awaitDurable(long position) {
+        if (position < 0) {
+            return;
+        }
+        log.awaitDurable(position);
+    }
+
+    //writes all published matrices to a snapshot and deletes what it makes unnecessary
+    public synchronized void checkpoint() throws IOException {
+        int snapshotGeneration = log.getGeneration();
+        Map<String, Matrix> matrices = new LinkedHashMap<>();
+        //everything logged from here on goes to the new log, a matrix published after the roll
+        //is not in the snapshot but its publish record is in the new log
+        log.roll(snapshotGeneration + 1, () -> {
+            for (String name : registry.getNames()) {
+                matrices.put(name, registry.get(name));
+            }
+        });
+        //writes logged in the new log may already be in the snapshot, replaying them again sets the same values
+        snapshots.write(snapshotGeneration, matrices);
+        deleteUpTo(snapshotGeneration);
+    }
+
+    @Override
+    public void close() throws IOException {
+        checkpointer.shutdownNow();
+        if (log != null) {
+            //a fresh snapshot keeps the next start from replaying the whole log
+            checkpoint();
+            log.close();
+        }
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error occurred while writing a snapshot: " + e.getMessage());
+        }
+    }
+
+    private void deleteUpTo(int generation) throws IOException {
+        for (int old : PersistenceFiles.generations(directory, LOG_PREFIX, LOG_SUFFIX)) {
+            if (old <= generation) {
+                Files.deleteIfExists(WriteAheadLog.logFile(directory, old));
+            }
+        }
+        for (int old : PersistenceFiles.generations(directory, "snapshot-", ".snap")) {
+            if (old < generation) {
+                Files.deleteIfExists(snapshots.snapshotFile(old));
+            }
+        }
+    }
+
+    private static void replay(Map<String, Matrix> matrices, LogRecord record) {
+        Matrix matrix;
+        if (record.type() == LogRecord.UNPUBLISH) {
+            matrices.remove(record.name());
+            return;
+        }
+        if (record.type() == LogRecord.PUBLISH) {
+            matrix = new Matrix(record.rows(), record.cols());
+            matrices.put(record.name(), matrix);
+        } else {
+            matrix = matrices.get(record.name());
+            if (matrix == null) {
+                return;
+            }
+        }
+        PointBatch points = record.points();
+        for (int i = 0; i < points.size(); ++i) {
+            matrix.insertValue(points.getRow(i), points.getCol(i), points.getValue(i));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+//files of the data directory are named <prefix><generation><suffix>
+final class PersistenceFiles {
+    private PersistenceFiles() {
+    }
+
+    static int latestGeneration(Path directory, String prefix, String suffix) throws IOException {
+        int latest = 0;
+        for (int generation : generations(directory, prefix, suffix)) {
+            latest = Math.max(latest, generation);
+        }
+        return latest;
+    }
+
+    static List<Integer> generations(Path directory, String prefix, String suffix) throws IOException {
+        List<Integer> generations = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return generations;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                    try {
+                        generations.add(Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length())));
+                    } catch (NumberFormatException e) {
+                        //not one of ours
+                    }
+                }
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+}
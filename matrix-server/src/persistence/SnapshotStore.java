@@ -0,0 +1,150 @@
+package persistence;
+
+import matrix.Matrix;
+import matrix.StorageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//a snapshot holds every published matrix in row-major order, snapshot-<n>.snap is the state after wal-<n>.log
+//it is written to a temporary file first and renamed once complete, so a crash never leaves half a snapshot
+public class SnapshotStore {
+    private static final int MAGIC = 0x4D585331;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final String SUFFIX = ".snap";
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path snapshotFile(int generation) {
+        return directory.resolve("snapshot-" + generation + SUFFIX);
+    }
+
+    public void write(int generation, Map<String, Matrix> matrices) throws IOException {
+        Path temporary = directory.resolve("snapshot-" + generation + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.putInt(MAGIC);
+            buffer.putInt(generation);
+            buffer.putInt(matrices.size());
+            for (Map.Entry<String, Matrix> entry : matrices.entrySet()) {
+                Matrix matrix = entry.getValue();
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                ensureSpace(channel, buffer, Short.BYTES + name.length + 2 * Integer.BYTES);
+                buffer.putShort((short) name.length);
+                buffer.put(name);
+                buffer.putInt(matrix.getRows());
+                buffer.putInt(matrix.getCols());
+
+                int[] row = new int[matrix.getCols()];
+                for (int i = 0; i < matrix.getRows(); ++i) {
+                    matrix.copyRow(i, row);
+                    int offset = 0;
+                    while (offset < row.length) {
+                        ensureSpace(channel, buffer, Integer.BYTES);
+                        int count = Math.min(row.length - offset, buffer.remaining() / Integer.BYTES);
+                        buffer.asIntBuffer().put(row, offset, count);
+                        buffer.position(buffer.position() + count * Integer.BYTES);
+                        offset += count;
+                    }
+                }
+            }
+            ensureSpace(channel, buffer, Integer.BYTES);
+            //the trailer tells a finished snapshot from one cut short
+            buffer.putInt(MAGIC);
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotFile(generation), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //the generation of the newest snapshot, 0 if there is none
+    public int latestGeneration() throws IOException {
+        return PersistenceFiles.latestGeneration(directory, "snapshot-", SUFFIX);
+    }
+
+    public Map<String, Matrix> read(int generation) throws IOException {
+        Map<String, Matrix> matrices = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(snapshotFile(generation), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+            fill(channel, buffer, 3 * Integer.BYTES);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != generation) {
+                throw new IOException("snapshot " + generation + " is not a matrix snapshot");
+            }
+            int count = buffer.getInt();
+            for (int m = 0; m < count; ++m) {
+                fill(channel, buffer, Short.BYTES);
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                fill(channel, buffer, name.length + 2 * Integer.BYTES);
+                buffer.get(name);
+                int rows = buffer.getInt();
+                int cols = buffer.getInt();
+                //a published matrix is always dense
+                Matrix matrix = new Matrix(rows, cols, StorageType.denseForDimensions(rows, cols));
+                for (int i = 0; i < rows; ++i) {
+                    for (int j = 0; j < cols; ) {
+                        fill(channel, buffer, Integer.BYTES);
+                        IntBuffer cells = buffer.asIntBuffer();
+                        int available = Math.min(cols - j, cells.remaining());
+                        for (int k = 0; k < available; ++k, ++j) {
+                            int value = cells.get(k);
+                            if (value != 0) {
+                                matrix.insertValue(i, j, value);
+                            }
+                        }
+                        buffer.position(buffer.position() + available * Integer.BYTES);
+                    }
+                }
+                matrices.put(new String(name, StandardCharsets.UTF_8), matrix);
+            }
+            fill(channel, buffer, Integer.BYTES);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("snapshot " + generation + " is incomplete");
+            }
+        }
+        return matrices;
+    }
+
+    private static void ensureSpace(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    //makes sure at least bytes are readable, the buffer stays in read mode
+    private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("snapshot ended too early");
+            }
+        }
+        buffer.flip();
+    }
+}
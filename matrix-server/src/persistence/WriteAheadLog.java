@@ -0,0 +1,353 @@
+package persistence;
+
+import matrix.Matrix;
+import metrics.ServerMetrics;
+import point.PointBatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+//an append-only log of records in memory-mapped regions of a file
+//a record is its length, its type, its body and a CRC32 of type and body, a zero length ends the log
+//appends only copy bytes into the mapping, a flusher thread forces everything appended so far in one go
+//and wakes up all appenders waiting for it, that way many batches share a single fsync (group commit)
+public class WriteAheadLog implements AutoCloseable {
+    private static final int REGION_SIZE = 16 * 1024 * 1024;
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+    //how long the flusher waits for more appends to join a commit that somebody is already waiting for
+    private static final long COMMIT_DELAY_NANOS = 200_000;
+
+    private final Path directory;
+    private final ServerMetrics metrics;
+    private final Thread flusher;
+
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    //regions written since the last force
+    private final List<MappedByteBuffer> dirtyRegions = new ArrayList<>();
+    private int generation;
+
+    //positions are counted over all generations so they only grow
+    private long basePosition;
+    private long appendedPosition;
+    private long durablePosition;
+    private long requestedPosition;
+    private boolean closed;
+
+    public WriteAheadLog(Path directory, int generation, ServerMetrics metrics) throws IOException {
+        this.directory = directory;
+        this.metrics = metrics;
+        open(generation);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static Path logFile(Path directory, int generation) {
+        return directory.resolve("wal-" + generation + ".log");
+    }
+
+    //the condition runs under the log's lock together with the append, the record is only written if it holds
+    //all of them return the position to wait for with awaitDurable or -1 if the condition did not hold
+    public long appendPoints(String name, PointBatch points, BooleanSupplier condition) {
+        return append(encode(LogRecord.POINTS, name, 0, 0, points), condition);
+    }
+
+    //the non-zero cells of the matrix are written straight from its rows into the mapping, a dense matrix would
+    //otherwise need a copy of 12 bytes per cell on the heap that nobody accounts for
+    //the cells are counted before the lock is taken, the caller keeps the matrix from changing until it returns
+    public long appendPublish(String name, Matrix matrix, BooleanSupplier condition) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int[] row = new int[matrix.getCols()];
+        long cells = 0;
+        for (int i = 0; i < matrix.getRows(); ++i) {
+            matrix.copyRow(i, row);
+            for (int value : row) {
+                if (value != 0) {
+                    ++cells;
+                }
+            }
+        }
+        long bodyLength = Short.BYTES + nameBytes.length + 3 * Integer.BYTES + cells * 3 * Integer.BYTES;
+        if (bodyLength > Integer.MAX_VALUE - RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("the matrix has too many non-zero cells to be persisted");
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("the log is closed");
+            }
+            if (!condition.getAsBoolean()) {
+                return -1;
+            }
+            try {
+                ensureRegionSpace(RECORD_OVERHEAD + (int) bodyLength);
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to grow the write-ahead log", e);
+            }
+            int start = region.position();
+            region.putInt((int) bodyLength);
+            region.put(LogRecord.PUBLISH);
+            region.putShort((short) nameBytes.length);
+            region.put(nameBytes);
+            region.putInt(matrix.getRows());
+            region.putInt(matrix.getCols());
+            region.putInt((int) cells);
+            long written = 0;
+            for (int i = 0; i < matrix.getRows() && written < cells; ++i) {
+                matrix.copyRow(i, row);
+                for (int j = 0; j < row.length && written < cells; ++j) {
+                    if (row[j] != 0) {
+                        region.putInt(i);
+                        region.putInt(j);
+                        region.putInt(row[j]);
+                        ++written;
+                    }
+                }
+            }
+            //only if the caller let the matrix change, a cell with its own value keeps the record as long as announced
+            for (; written < cells; ++written) {
+                region.putInt(0);
+                region.putInt(0);
+                region.putInt(matrix.getValue(0, 0));
+            }
+            CRC32 crc = new CRC32();
+            crc.update(region.slice(start + Integer.BYTES, Byte.BYTES + (int) bodyLength));
+            region.putInt((int) crc.getValue());
+            appendedPosition = basePosition + regionStart + region.position();
+            metrics.getWalRecords().increment();
+            metrics.getWalBytes().add(RECORD_OVERHEAD + bodyLength);
+            return appendedPosition;
+        }
+    }
+
+    public long appendUnpublish(String name, BooleanSupplier condition) {
+        return append(encode(LogRecord.UNPUBLISH, name, 0, 0, new PointBatch(0)), condition);
+    }
+
+    public void awaitDurable(long position) {
+        synchronized (this) {
+            if (position > requestedPosition) {
+                requestedPosition = position;
+                notifyAll();
+            }
+            while (durablePosition < position && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting for the log to be written", e);
+                }
+            }
+        }
+    }
+
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    //forces the current file and continues in a new one, underLock runs while no record can be appended
+    public void roll(int newGeneration, Runnable underLock) throws IOException {
+        synchronized (this) {
+            long end = appendedPosition;
+            forceDirtyRegions();
+            durablePosition = Math.max(durablePosition, end);
+            notifyAll();
+            channel.close();
+            basePosition = appendedPosition;
+            open(newGeneration);
+            underLock.run();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            forceDirtyRegions();
+            durablePosition = appendedPosition;
+            closed = true;
+            notifyAll();
+            channel.close();
+        }
+        flusher.interrupt();
+    }
+
+    //every intact record of a log file in order, reading stops at the end or at the first torn record
+    public static List<LogRecord> read(Path file) throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = readChannel.size();
+            long position = 0;
+            while (position + Integer.BYTES <= size) {
+                ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+                readChannel.read(lengthBuffer, position);
+                int length = lengthBuffer.getInt(0);
+                if (length <= 0 || position + RECORD_OVERHEAD + length > size) {
+                    break;
+                }
+                ByteBuffer record = readChannel.map(FileChannel.MapMode.READ_ONLY, position + Integer.BYTES,
+                        Byte.BYTES + length + Integer.BYTES);
+                LogRecord decoded = decode(record, length);
+                if (decoded == null) {
+                    break;
+                }
+                records.add(decoded);
+                position += RECORD_OVERHEAD + length;
+            }
+        }
+        return records;
+    }
+
+    private long append(ByteBuffer record, BooleanSupplier condition) {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("the log is closed");
+            }
+            if (!condition.getAsBoolean()) {
+                return -1;
+            }
+            try {
+                ensureRegionSpace(record.remaining());
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to grow the write-ahead log", e);
+            }
+            region.put(record);
+            appendedPosition = basePosition + regionStart + region.position();
+            metrics.getWalRecords().increment();
+            metrics.getWalBytes().add(record.limit());
+            return appendedPosition;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            List<MappedByteBuffer> toForce;
+            synchronized (this) {
+                while (requestedPosition <= durablePosition && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            //give the appenders that are about to ask a chance to join this commit
+            long deadline = System.nanoTime() + COMMIT_DELAY_NANOS;
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                target = appendedPosition;
+                toForce = new ArrayList<>(dirtyRegions);
+                dirtyRegions.clear();
+                dirtyRegions.add(region);
+            }
+            long forceStart = System.nanoTime();
+            //forcing does not need the lock, appends keep going into the same pages meanwhile
+            for (MappedByteBuffer dirty : toForce) {
+                dirty.force();
+            }
+            metrics.getFsync().record(System.nanoTime() - forceStart);
+            synchronized (this) {
+                durablePosition = Math.max(durablePosition, target);
+                notifyAll();
+            }
+        }
+    }
+
+    private void forceDirtyRegions() {
+        for (MappedByteBuffer dirty : dirtyRegions) {
+            dirty.force();
+        }
+        dirtyRegions.clear();
+        dirtyRegions.add(region);
+    }
+
+    private void open(int newGeneration) throws IOException {
+        Files.createDirectories(directory);
+        this.generation = newGeneration;
+        this.channel = FileChannel.open(logFile(directory, newGeneration), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.regionStart = 0;
+        this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+        dirtyRegions.clear();
+        dirtyRegions.add(region);
+    }
+
+    //a new region starts right where the last record ended, so there is never a gap to skip when reading
+    private void ensureRegionSpace(int recordSize) throws IOException {
+        //the zero length after the record that marks the end has to fit too
+        if (region.remaining() >= recordSize + Integer.BYTES) {
+            return;
+        }
+        regionStart += region.position();
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+                Math.max(REGION_SIZE, recordSize + Integer.BYTES));
+        dirtyRegions.add(region);
+    }
+
+    private static ByteBuffer encode(byte type, String name, int rows, int cols, PointBatch points) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = Short.BYTES + nameBytes.length + 3 * Integer.BYTES + points.size() * 3 * Integer.BYTES;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + bodyLength);
+        record.putInt(bodyLength);
+        record.put(type);
+        record.putShort((short) nameBytes.length);
+        record.put(nameBytes);
+        record.putInt(rows);
+        record.putInt(cols);
+        record.putInt(points.size());
+        for (int i = 0; i < points.size(); ++i) {
+            record.putInt(points.getRow(i));
+            record.putInt(points.getCol(i));
+            record.putInt(points.getValue(i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, Byte.BYTES + bodyLength);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    //the buffer holds type, body and CRC, returns null for a torn record
+    private static LogRecord decode(ByteBuffer record, int bodyLength) {
+        CRC32 crc = new CRC32();
+        crc.update(record.slice(0, Byte.BYTES + bodyLength));
+        if ((int) crc.getValue() != record.getInt(Byte.BYTES + bodyLength)) {
+            return null;
+        }
+        byte type = record.get();
+        //unsigned, a name of more than 32767 bytes written before names were limited still reads back
+        byte[] nameBytes = new byte[record.getShort() & 0xFFFF];
+        record.get(nameBytes);
+        int rows = record.getInt();
+        int cols = record.getInt();
+        int count = record.getInt();
+        PointBatch points = new PointBatch(count);
+        for (int i = 0; i < count; ++i) {
+            points.add(record.getInt(), record.getInt(), record.getInt());
+        }
+        return new LogRecord(type, new String(nameBytes, StandardCharsets.UTF_8), rows, cols, points);
+    }
+}
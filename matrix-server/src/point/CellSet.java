@@ -0,0 +1,40 @@
+package point;
+
+import java.util.Arrays;
+
+//open addressing set of cell keys, the keys are row * cols + col and never negative
+//no boxing and no entry objects, a batch of points fits in two arrays
+public class CellSet {
+    private static final long EMPTY = -1;
+    //golden ratio multiplier, spreads keys of neighbouring cells over the whole table
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+
+    private final long[] keys;
+    private final int mask;
+    private final int shift;
+
+    //the set never grows, it has room for at least expectedSize keys at a load factor of at most one half
+    public CellSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        this.mask = capacity - 1;
+        this.shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    //returns false if the key was already in the set
+    public boolean add(long key) {
+        int slot = (int) ((key * SPREAD) >>> shift);
+        while (true) {
+            long current = keys[slot];
+            if (current == EMPTY) {
+                keys[slot] = key;
+                return true;
+            }
+            if (current == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+}
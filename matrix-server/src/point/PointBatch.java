@@ -0,0 +1,98 @@
+package point;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+//points kept as parallel primitive arrays, rows and cols are 0 based
+public class PointBatch {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] rows;
+    private int[] cols;
+    private int[] values;
+    private int size;
+
+    public PointBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PointBatch(int capacity) {
+        int initialCapacity = Math.max(capacity, 1);
+        this.rows = new int[initialCapacity];
+        this.cols = new int[initialCapacity];
+        this.values = new int[initialCapacity];
+    }
+
+    public static PointBatch of(Collection<Point> points) {
+        PointBatch batch = new PointBatch(points.size());
+        for (Point point : points) {
+            batch.add(point.getX(), point.getY(), point.getValue());
+        }
+        return batch;
+    }
+
+    public void add(int row, int col, int value) {
+        if (size == rows.length) {
+            int newCapacity = rows.length * 2;
+            rows = Arrays.copyOf(rows, newCapacity);
+            cols = Arrays.copyOf(cols, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+        rows[size] = row;
+        cols[size] = col;
+        values[size] = value;
+        ++size;
+    }
+
+    //drops the points that fall outside a matrix with the given dimensions, the rest keep their order
+    public void retainWithin(int matrixRows, int matrixCols) {
+        int kept = 0;
+        for (int i = 0; i < size; ++i) {
+            if (rows[i] >= 0 && rows[i] < matrixRows && cols[i] >= 0 && cols[i] < matrixCols) {
+                rows[kept] = rows[i];
+                cols[kept] = cols[i];
+                values[kept] = values[i];
+                ++kept;
+            }
+        }
+        size = kept;
+    }
+
+    //drops the points that fall outside the matrix and keeps only the last point of every cell,
+    //the points that stay keep their order
+    public void retainLastWithin(int matrixRows, int matrixCols) {
+        CellSet seen = new CellSet(size);
+        //walking backwards the first point of a cell is its last write, the survivors are packed at the end
+        int kept = size;
+        for (int i = size - 1; i >= 0; --i) {
+            if (rows[i] >= 0 && rows[i] < matrixRows && cols[i] >= 0 && cols[i] < matrixCols &&
+                    seen.add((long) rows[i] * matrixCols + cols[i])) {
+                --kept;
+                rows[kept] = rows[i];
+                cols[kept] = cols[i];
+                values[kept] = values[i];
+            }
+        }
+        int count = size - kept;
+        System.arraycopy(rows, kept, rows, 0, count);
+        System.arraycopy(cols, kept, cols, 0, count);
+        System.arraycopy(values, kept, values, 0, count);
+        size = count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getRow(int index) {
+        return rows[index];
+    }
+
+    public int getCol(int index) {
+        return cols[index];
+    }
+
+    public int getValue(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,87 @@
+package point;
+
+import java.nio.ByteBuffer;
+
+//reads "row col value" triples of the text protocol straight from the request bytes into a batch,
+//without splitting into strings, boxing or making a Point per triple
+//rows and cols are 1 based in the request and 0 based in the batch
+public final class PointParser {
+    //the shortest triple is "1 1 1" and a separator
+    private static final int MIN_POINT_LENGTH = 6;
+
+    private PointParser() {
+    }
+
+    //whether the first byte that is not whitespace starts a number, that is how points differ from commands
+    public static boolean startsWithNumber(ByteBuffer request) {
+        for (int i = request.position(); i < request.limit(); ++i) {
+            byte b = request.get(i);
+            if (!isWhitespace(b)) {
+                return isDigit(b) || b == '-' || b == '+';
+            }
+        }
+        return false;
+    }
+
+    //the position of the request is not moved
+    public static PointBatch parse(ByteBuffer request) throws InvalidPointException {
+        PointBatch points = new PointBatch(request.remaining() / MIN_POINT_LENGTH + 1);
+        int[] triple = new int[3];
+        int filled = 0;
+        int i = request.position();
+        int limit = request.limit();
+        while (true) {
+            while (i < limit && isWhitespace(request.get(i))) {
+                ++i;
+            }
+            if (i == limit) {
+                break;
+            }
+
+            boolean negative = false;
+            byte b = request.get(i);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                ++i;
+            }
+            int start = i;
+            //accumulated as a negative number so that Integer.MIN_VALUE fits too
+            long value = 0;
+            while (i < limit && isDigit(b = request.get(i))) {
+                value = value * 10 - (b - '0');
+                if (value < Integer.MIN_VALUE) {
+                    throw new InvalidPointException("point is out of the int range");
+                }
+                ++i;
+            }
+            if (i == start || (i < limit && !isWhitespace(request.get(i)))) {
+                throw new InvalidPointException("point is not made of numbers");
+            }
+            if (!negative && value == Integer.MIN_VALUE) {
+                throw new InvalidPointException("point is out of the int range");
+            }
+            triple[filled++] = negative ? (int) value : (int) -value;
+
+            if (filled == 3) {
+                if (triple[0] < 1 || triple[1] < 1) {
+                    throw new InvalidPointException("dimension cannot be negative");
+                }
+                points.add(triple[0] - 1, triple[1] - 1, triple[2]);
+                filled = 0;
+            }
+        }
+        if (filled != 0 || points.size() == 0) {
+            throw new InvalidPointException("invalid point passed");
+        }
+        return points;
+    }
+
+    //the characters \s matches
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
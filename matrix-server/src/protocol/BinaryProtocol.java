@@ -0,0 +1,144 @@
+package protocol;
+
+import matrix.StorageType;
+import point.InvalidPointException;
+import point.PointBatch;
+
+import java.nio.ByteBuffer;
+
+//a binary connection starts with MAGIC followed by rows and cols as ints and optionally a STORAGE_ byte,
+//every following frame starts with an opcode byte:
+//OP_POINTS is followed by a point count and that many (row, col, value) int triples
+//OP_MODE is followed by MODE_FULL or MODE_DELTA
+//OP_SNAPSHOT has nothing after it
+//OP_ROWS is followed by the first and the last row to send as ints
+//rows and cols are 1 based like in the text protocol, a text request never starts with MAGIC's zero byte
+public final class BinaryProtocol {
+    public static final byte[] MAGIC = {0, 'M', 'X', 1};
+    public static final byte OP_POINTS = 1;
+    public static final byte OP_MODE = 2;
+    public static final byte OP_SNAPSHOT = 3;
+    public static final byte OP_ROWS = 4;
+
+    public static final byte MODE_FULL = 0;
+    public static final byte MODE_DELTA = 1;
+
+    public static final byte STORAGE_FLAT = 1;
+    public static final byte STORAGE_TILED = 2;
+    public static final byte STORAGE_OFF_HEAP = 3;
+    public static final byte STORAGE_SPARSE = 4;
+
+    public static final int HANDSHAKE_SIZE = MAGIC.length + 2 * Integer.BYTES;
+    public static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+    public static final int POINT_SIZE = 3 * Integer.BYTES;
+
+    private BinaryProtocol() {
+    }
+
+    public static boolean isHandshake(ByteBuffer payload) {
+        if (payload.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (payload.get(payload.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static ByteBuffer encodeHandshake(int rows, int cols) {
+        ByteBuffer payload = ByteBuffer.allocate(HANDSHAKE_SIZE);
+        payload.put(MAGIC);
+        payload.putInt(rows);
+        payload.putInt(cols);
+        payload.flip();
+        return payload;
+    }
+
+    public static ByteBuffer encodeHandshake(int rows, int cols, StorageType storageType) {
+        ByteBuffer payload = ByteBuffer.allocate(HANDSHAKE_SIZE + Byte.BYTES);
+        payload.put(MAGIC);
+        payload.putInt(rows);
+        payload.putInt(cols);
+        payload.put(switch (storageType) {
+            case FLAT -> STORAGE_FLAT;
+            case TILED -> STORAGE_TILED;
+            case OFF_HEAP -> STORAGE_OFF_HEAP;
+            case SPARSE -> STORAGE_SPARSE;
+        });
+        payload.flip();
+        return payload;
+    }
+
+    public static StorageType decodeStorageType(byte storageType) {
+        return switch (storageType) {
+            case STORAGE_FLAT -> StorageType.FLAT;
+            case STORAGE_TILED -> StorageType.TILED;
+            case STORAGE_OFF_HEAP -> StorageType.OFF_HEAP;
+            case STORAGE_SPARSE -> StorageType.SPARSE;
+            default -> throw new IllegalArgumentException("unknown storage type " + storageType);
+        };
+    }
+
+    public static ByteBuffer encodeMode(byte mode) {
+        ByteBuffer payload = ByteBuffer.allocate(2 * Byte.BYTES);
+        payload.put(OP_MODE);
+        payload.put(mode);
+        payload.flip();
+        return payload;
+    }
+
+    public static ByteBuffer encodeSnapshot() {
+        ByteBuffer payload = ByteBuffer.allocate(Byte.BYTES);
+        payload.put(OP_SNAPSHOT);
+        payload.flip();
+        return payload;
+    }
+
+    //rows are 1 based and both ends are included
+    public static ByteBuffer encodeRows(int fromRow, int toRow) {
+        ByteBuffer payload = ByteBuffer.allocate(Byte.BYTES + 2 * Integer.BYTES);
+        payload.put(OP_ROWS);
+        payload.putInt(fromRow);
+        payload.putInt(toRow);
+        payload.flip();
+        return payload;
+    }
+
+    //rows and cols of the batch are 0 based, they are sent 1 based
+    public static ByteBuffer encodePoints(PointBatch points) {
+        ByteBuffer payload = ByteBuffer.allocate(HEADER_SIZE + points.size() * POINT_SIZE);
+        payload.put(OP_POINTS);
+        payload.putInt(points.size());
+        for (int i = 0; i < points.size(); ++i) {
+            payload.putInt(points.getRow(i) + 1);
+            payload.putInt(points.getCol(i) + 1);
+            payload.putInt(points.getValue(i));
+        }
+        payload.flip();
+        return payload;
+    }
+
+    //reads the points of an OP_POINTS payload whose opcode is already consumed, rows and cols become 0 based
+    public static PointBatch decodePoints(ByteBuffer payload) throws InvalidPointException {
+        if (payload.remaining() < Integer.BYTES) {
+            throw new InvalidPointException("points frame has no count");
+        }
+        int count = payload.getInt();
+        if (count <= 0 || (long) count * POINT_SIZE != payload.remaining()) {
+            throw new InvalidPointException("points frame count does not match its size");
+        }
+        PointBatch points = new PointBatch(count);
+        for (int i = 0; i < count; ++i) {
+            int row = payload.getInt() - 1;
+            int col = payload.getInt() - 1;
+            int value = payload.getInt();
+            if (row < 0 || col < 0) {
+                throw new InvalidPointException("dimension cannot be negative");
+            }
+            points.add(row, col, value);
+        }
+        return points;
+    }
+}
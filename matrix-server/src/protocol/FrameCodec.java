@@ -0,0 +1,69 @@
+package protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//every message between client and server is a 4 byte big-endian length followed by that many payload bytes
+public final class FrameCodec {
+    public static final int HEADER_SIZE = Integer.BYTES;
+    //replies, a whole matrix rendered as text can be big
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    //requests, the server buffers them before it can tell whether they make sense, so they are kept much smaller
+    //8 MB is about 700k binary points or 300k text points per batch
+    public static final int MAX_REQUEST_SIZE = 8 * 1024 * 1024;
+
+    private FrameCodec() {
+    }
+
+    public static ByteBuffer encode(String payload) {
+        return encode(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ByteBuffer encode(byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.putInt(payload.length);
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    //frames the remaining bytes of the payload, the payload's position is moved to its limit
+    public static ByteBuffer encode(ByteBuffer payload) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.remaining());
+        frame.putInt(payload.remaining());
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    //buffer must be in read mode, on success its position is moved past the frame
+    //returns null if the buffer does not hold a whole frame yet
+    public static ByteBuffer nextFrame(ByteBuffer buffer) throws InvalidFrameException {
+        return nextFrame(buffer, MAX_FRAME_SIZE);
+    }
+
+    public static ByteBuffer nextFrame(ByteBuffer buffer, int maxLength) throws InvalidFrameException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int length = frameLength(buffer, buffer.position(), maxLength);
+        if (buffer.remaining() < HEADER_SIZE + length) {
+            return null;
+        }
+        ByteBuffer payload = buffer.slice(buffer.position() + HEADER_SIZE, length);
+        buffer.position(buffer.position() + HEADER_SIZE + length);
+        return payload;
+    }
+
+    public static int frameLength(ByteBuffer buffer, int headerIndex) throws InvalidFrameException {
+        return frameLength(buffer, headerIndex, MAX_FRAME_SIZE);
+    }
+
+    public static int frameLength(ByteBuffer buffer, int headerIndex, int maxLength) throws InvalidFrameException {
+        int length = buffer.getInt(headerIndex);
+        if (length < 0 || length > maxLength) {
+            throw new InvalidFrameException("frame length " + length + " is out of range");
+        }
+        return length;
+    }
+}
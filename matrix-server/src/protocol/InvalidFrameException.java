@@ -0,0 +1,11 @@
+package protocol;
+
+public class InvalidFrameException extends Exception {
+    public InvalidFrameException(String msg) {
+        super(msg);
+    }
+
+    public InvalidFrameException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package protocol;
+
+//picked by the first frame of a connection and kept until it closes
+public enum Protocol {
+    TEXT,
+    BINARY
+}
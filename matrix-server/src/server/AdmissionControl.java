@@ -0,0 +1,297 @@
+package server;
+
+import matrix.Matrix;
+import metrics.ServerMetrics;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+//keeps a few bad clients from running the server out of sockets or heap
+//cells are reserved before a matrix is allocated and given back once nothing holds the matrix any more,
+//a published matrix counts for the server only since it outlives the connection that made it,
+//once unpublished its cells are given back when the last connection that opened it lets go of it
+//bytes of requests are charged once they are in memory, a connection is not read from while it or the server
+//is over its request bytes, so what a client can make the server buffer grows only as fast as it sends
+//a worker may still reserve for a connection the selector thread is closing, so the cells and the request bytes
+//of a connection are only touched under its monitor
+public class AdmissionControl {
+    private final AdmissionLimits limits;
+    private final MatrixRegistry registry;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong cells = new AtomicLong();
+    private final AtomicLong liveMatrices = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    //how many connections hold each published matrix, also the ones unpublished but still held,
+    //a matrix is in here for as long as its cells count for the server, guarded by itself
+    private final Map<Matrix, Integer> sharedHolders = new IdentityHashMap<>();
+
+    public AdmissionControl(AdmissionLimits limits, MatrixRegistry registry) {
+        this.limits = limits;
+        this.registry = registry;
+    }
+
+    public void registerGauges(ServerMetrics metrics) {
+        metrics.registerGauge("connections", this::getConnections);
+        metrics.registerGauge("live_matrices", this::getLiveMatrices);
+        metrics.registerGauge("published_matrices", () -> registry.getNames().size());
+        metrics.registerGauge("cells", this::getCells);
+        metrics.registerGauge("request_bytes", this::getRequestBytes);
+    }
+
+    public AdmissionLimits getLimits() {
+        return limits;
+    }
+
+    //returns false if the server already has as many connections as it takes
+    public boolean tryAcceptConnection() {
+        while (true) {
+            int current = connections.get();
+            if (current >= limits.maxConnections()) {
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    //gives back the connection slot and the cells of the matrices only that connection had,
+    //a connection in the middle of a request is released by whoever gets its reply once it is done
+    public void connectionClosed(ClientConnection connection) {
+        synchronized (connection) {
+            if (connection.isClosed()) {
+                return;
+            }
+            connection.setClosed(true);
+            for (Matrix shared : connection.getHeldShared()) {
+                letGo(shared);
+            }
+            connection.getHeldShared().clear();
+            cells.addAndGet(-connection.getOwnedCells());
+            liveMatrices.addAndGet(-connection.getOwnedMatrices());
+            requestBytes.addAndGet(-connection.getRequestBytes());
+            connection.addOwnedCells(-connection.getOwnedCells());
+            connection.addOwnedMatrices(-connection.getOwnedMatrices());
+            connection.addRequestBytes(-connection.getRequestBytes());
+        }
+        connections.decrementAndGet();
+        if (!connection.isProcessing()) {
+            connection.release();
+        }
+    }
+
+    //returns false if a matrix that big would put the connection or the server over its limit
+    public boolean tryReserve(ClientConnection connection, int rows, int cols) {
+        long requested = (long) rows * cols;
+        synchronized (connection) {
+            if (connection.isClosed() || rows < 1 || cols < 1 ||
+                    connection.getOwnedCells() + requested > limits.maxCellsPerConnection()) {
+                return false;
+            }
+            while (true) {
+                long current = cells.get();
+                if (current + requested > limits.maxCellsPerServer()) {
+                    return false;
+                }
+                if (cells.compareAndSet(current, current + requested)) {
+                    connection.addOwnedCells(requested);
+                    return true;
+                }
+            }
+        }
+    }
+
+    //reserves the cells of a rows x cols matrix and then makes it, the cells are given back if making it fails
+    public Matrix allocate(ClientConnection connection, int rows, int cols, Supplier<Matrix> factory)
+            throws LimitExceededException {
+        if (!tryReserve(connection, rows, cols)) {
+            throw new LimitExceededException("a matrix of " + rows + " x " + cols +
+                    " cells is over the cell limit of the connection or the server");
+        }
+        Matrix matrix;
+        try {
+            matrix = factory.get();
+        } catch (RuntimeException | OutOfMemoryError e) {
+            release(connection, rows, cols, 0);
+            throw e;
+        }
+        synchronized (connection) {
+            //a connection closed meanwhile already gave back the reservation and never gets the matrix
+            if (!connection.isClosed()) {
+                connection.addOwnedMatrices(1);
+                liveMatrices.incrementAndGet();
+            }
+        }
+        return matrix;
+    }
+
+    //a matrix the connection no longer keeps under some name, its cells are free once nothing else holds it
+    public void dropped(ClientConnection connection, Matrix matrix) {
+        if (matrix == null || connection.holds(matrix)) {
+            return;
+        }
+        synchronized (connection) {
+            if (connection.getHeldShared().remove(matrix)) {
+                letGo(matrix);
+                return;
+            }
+        }
+        if (!isShared(matrix)) {
+            release(connection, matrix.getRows(), matrix.getCols(), 1);
+        }
+    }
+
+    //whether the matrix is or was published, as opposed to being a connection's own
+    public boolean isShared(Matrix matrix) {
+        synchronized (sharedHolders) {
+            return sharedHolders.containsKey(matrix);
+        }
+    }
+
+    //called before a connection keeps a published matrix under a name, returns false if the matrix was
+    //unpublished and let go of by everyone in the meantime
+    public boolean tryHold(ClientConnection connection, Matrix matrix) {
+        synchronized (connection) {
+            if (connection.getHeldShared().contains(matrix)) {
+                return true;
+            }
+            synchronized (sharedHolders) {
+                Integer holders = sharedHolders.get(matrix);
+                if (holders == null) {
+                    return false;
+                }
+                //a closed connection never lets go again, so it does not count
+                if (!connection.isClosed()) {
+                    sharedHolders.put(matrix, holders + 1);
+                    connection.getHeldShared().add(matrix);
+                }
+                return true;
+            }
+        }
+    }
+
+    //called right after the connection published a matrix it made itself,
+    //from then on it counts for the server only and the connection is its first holder
+    public void published(ClientConnection connection, Matrix matrix) {
+        long matrixCells = (long) matrix.getRows() * matrix.getCols();
+        synchronized (connection) {
+            if (connection.isClosed()) {
+                //closing gave the cells back, but the registry keeps the matrix alive
+                cells.addAndGet(matrixCells);
+                liveMatrices.incrementAndGet();
+                synchronized (sharedHolders) {
+                    sharedHolders.put(matrix, 0);
+                }
+            } else {
+                connection.addOwnedCells(-matrixCells);
+                connection.addOwnedMatrices(-1);
+                connection.getHeldShared().add(matrix);
+                synchronized (sharedHolders) {
+                    sharedHolders.put(matrix, 1);
+                }
+            }
+        }
+    }
+
+    //called right after the last name of the matrix was unpublished
+    public void unpublished(Matrix matrix) {
+        synchronized (sharedHolders) {
+            Integer holders = sharedHolders.get(matrix);
+            if (holders != null && holders == 0 && !registry.contains(matrix)) {
+                free(matrix);
+            }
+        }
+    }
+
+    //a published matrix recovered from disk at startup
+    public void recovered(Matrix matrix) {
+        cells.addAndGet((long) matrix.getRows() * matrix.getCols());
+        liveMatrices.incrementAndGet();
+        synchronized (sharedHolders) {
+            sharedHolders.put(matrix, 0);
+        }
+    }
+
+    //whether the connection may be read from, what it already read is over the limit by at most one read
+    //a connection holding nothing but its initial read buffer may always read, the connection cap pays for that,
+    //so clients sending small requests keep going while big ones wait for the server to have bytes again
+    public boolean mayReadRequests(ClientConnection connection) {
+        synchronized (connection) {
+            long held = connection.getRequestBytes();
+            if (held >= limits.maxRequestBytesPerConnection()) {
+                return false;
+            }
+            return held == 0 && !connection.isReadBufferFull() || requestBytes.get() < limits.maxRequestBytesPerServer();
+        }
+    }
+
+    //request bytes the connection has just put in memory
+    public void chargeRequestBytes(ClientConnection connection, long bytes) {
+        synchronized (connection) {
+            //closing already gave back everything the connection had
+            if (connection.isClosed()) {
+                return;
+            }
+            connection.addRequestBytes(bytes);
+            requestBytes.addAndGet(bytes);
+        }
+    }
+
+    public void releaseRequestBytes(ClientConnection connection, long bytes) {
+        chargeRequestBytes(connection, -bytes);
+    }
+
+    public long getCells() {
+        return cells.get();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    //matrices of all connections and the published ones
+    public long getLiveMatrices() {
+        return liveMatrices.get();
+    }
+
+    private void letGo(Matrix matrix) {
+        synchronized (sharedHolders) {
+            Integer holders = sharedHolders.get(matrix);
+            if (holders == null) {
+                return;
+            }
+            sharedHolders.put(matrix, holders - 1);
+            if (holders == 1 && !registry.contains(matrix)) {
+                free(matrix);
+            }
+        }
+    }
+
+    //called under sharedHolders once nobody holds the matrix and no name is left for it
+    private void free(Matrix matrix) {
+        sharedHolders.remove(matrix);
+        cells.addAndGet(-(long) matrix.getRows() * matrix.getCols());
+        liveMatrices.decrementAndGet();
+    }
+
+    private void release(ClientConnection connection, int rows, int cols, int matrices) {
+        synchronized (connection) {
+            //closing already gave back everything the connection had
+            if (connection.isClosed()) {
+                return;
+            }
+            long reserved = (long) rows * cols;
+            connection.addOwnedCells(-reserved);
+            connection.addOwnedMatrices(-matrices);
+            cells.addAndGet(-reserved);
+            liveMatrices.addAndGet(-matrices);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package server;
+
+import protocol.FrameCodec;
+
+import java.util.concurrent.TimeUnit;
+
+//cells are counted as rows * cols no matter the storage, a sparse matrix may turn dense at any moment
+//request bytes are what the server holds of requests it has not processed yet
+public record AdmissionLimits(int maxConnections, long maxCellsPerConnection, long maxCellsPerServer,
+                              long maxRequestBytesPerConnection, long maxRequestBytesPerServer,
+                              long idleTimeoutNanos) {
+    public AdmissionLimits {
+        if (maxConnections < 1 || maxCellsPerConnection < 1 || maxCellsPerServer < 1 ||
+                maxRequestBytesPerServer < 1 || idleTimeoutNanos < 1) {
+            throw new IllegalArgumentException("limits must be positive");
+        }
+        if (maxRequestBytesPerConnection < 2L * (FrameCodec.HEADER_SIZE + FrameCodec.MAX_REQUEST_SIZE)) {
+            //a big request being processed and the read buffer growing for the next one must both fit,
+            //otherwise the connection stops being read half way through a request
+            throw new IllegalArgumentException("a connection must be able to buffer at least two of the biggest requests");
+        }
+    }
+
+    //the matrices of the whole server may take up to half of the heap and the requests waiting to be processed
+    //an eighth of it
+    public static AdmissionLimits defaults() {
+        long heapCells = Runtime.getRuntime().maxMemory() / Integer.BYTES / 2;
+        return new AdmissionLimits(10_000, Math.min(16L * 1024 * 1024, heapCells), heapCells,
+                2L * (FrameCodec.HEADER_SIZE + FrameCodec.MAX_REQUEST_SIZE), Runtime.getRuntime().maxMemory() / 8,
+                TimeUnit.MINUTES.toNanos(5));
+    }
+}
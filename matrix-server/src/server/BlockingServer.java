@@ -0,0 +1,227 @@
+package server;
+
+import files.MatrixFiles;
+import matrix.FillEngine;
+import matrix.MatrixOperations;
+import metrics.MetricsExporter;
+import metrics.ServerMetrics;
+import persistence.MatrixPersistence;
+import protocol.FrameCodec;
+import protocol.InvalidFrameException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//the same requests as Server, but every connection gets a virtual thread that blocks on its socket
+//a connection is served strictly one request after another, so there is no request queue, no completion
+//queue and no interest ops, a blocked virtual thread only costs its small stack
+public class BlockingServer implements MatrixServer {
+    private static final String HOST = "localhost";
+    //how often a connection over its request bytes checks whether it may read again
+    private static final long REQUEST_BYTES_RETRY_MILLIS = 10;
+
+    private final ServerConfig config;
+    private volatile boolean isServerWorking;
+
+    private volatile ServerSocketChannel serverSocketChannel;
+    private final ServerMetrics metrics;
+    private final MatrixRegistry registry;
+    private final AdmissionControl admission;
+    private final MatrixPersistence persistence;
+    private final RequestHandler requestHandler;
+    //only set if the config has an admin port
+    private MetricsExporter exporter;
+    //closed on stop so the threads blocked reading them wake up
+    private final Set<SocketChannel> clients;
+    //there is no selector here, a platform thread turns the wheel and closing the channel wakes the reader
+    private final IdleTimerWheel idleConnections;
+
+    public BlockingServer(ServerConfig config) {
+        this.config = config;
+        this.metrics = new ServerMetrics();
+        this.registry = new MatrixRegistry();
+        this.admission = new AdmissionControl(config.limits(), registry);
+        admission.registerGauges(metrics);
+        this.persistence = config.dataDirectory() == null ? null :
+                new MatrixPersistence(config.dataDirectory(), registry, metrics);
+        this.requestHandler = new RequestHandler(new FillEngine(),
+                new OperationHandler(new MatrixOperations(), admission), registry, admission, persistence,
+                config.fileDirectory() == null ? null : new MatrixFiles(config.fileDirectory()), metrics);
+        this.clients = ConcurrentHashMap.newKeySet();
+        this.idleConnections = new IdleTimerWheel(config.limits().idleTimeoutNanos(), System.nanoTime());
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocketChannel channel = ServerSocketChannel.open();
+             ExecutorService connectionThreads = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (config.adminPort() != 0) {
+                exporter = new MetricsExporter(metrics, config.port(), config.adminPort());
+            }
+            if (persistence != null) {
+                persistence.recover();
+                for (String name : registry.getNames()) {
+                    admission.recovered(registry.get(name));
+                }
+            }
+            channel.bind(new InetSocketAddress(HOST, config.port()));
+            serverSocketChannel = channel;
+            isServerWorking = true;
+            Thread idleSweeper = Thread.ofPlatform().daemon().name("idle-sweeper").start(this::sweepIdleConnections);
+            while (isServerWorking) {
+                try {
+                    SocketChannel client = channel.accept();
+                    if (!admission.tryAcceptConnection()) {
+                        try (client) {
+                            client.write(FrameCodec.encode("server is full, try again later"));
+                        }
+                        continue;
+                    }
+                    clients.add(client);
+                    ClientConnection connection = new ClientConnection(client);
+                    synchronized (idleConnections) {
+                        idleConnections.add(connection);
+                    }
+                    connectionThreads.execute(() -> serve(connection));
+                } catch (AsynchronousCloseException e) {
+                    //stop closed the server socket
+                    break;
+                }
+            }
+            idleSweeper.interrupt();
+            for (SocketChannel client : clients) {
+                closeQuietly(client);
+            }
+            //closing the executor waits for every connection thread to finish its current request
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to start server", e);
+        } finally {
+            if (exporter != null) {
+                exporter.close();
+            }
+            closePersistence();
+        }
+    }
+
+    @Override
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void stop() {
+        isServerWorking = false;
+        ServerSocketChannel channel = serverSocketChannel;
+        if (channel != null) {
+            closeQuietly(channel);
+        }
+    }
+
+    private void serve(ClientConnection connection) {
+        SocketChannel channel = connection.getChannel();
+        try {
+            List<ByteBuffer> frames;
+            while (awaitRequestBytes(connection) && (frames = connection.readFrames(admission)) != null) {
+                long receivedNanos = System.nanoTime();
+                for (ByteBuffer frame : frames) {
+                    metrics.recordRequest();
+                    metrics.recordBytesIn(FrameCodec.HEADER_SIZE + frame.remaining());
+                    List<ByteBuffer> reply;
+                    //a long request does not count as idle
+                    connection.setProcessing(true);
+                    try {
+                        reply = requestHandler.handle(connection, frame);
+                    } catch (RuntimeException e) {
+                        System.out.println("Error occurred while processing client request: " + e.getMessage());
+                        reply = List.of(FrameCodec.encode("internal server error"));
+                    } finally {
+                        connection.setProcessing(false);
+                        admission.releaseRequestBytes(connection, frame.capacity());
+                    }
+                    for (ByteBuffer buffer : reply) {
+                        metrics.recordBytesOut(buffer.remaining());
+                        connection.enqueue(buffer);
+                    }
+                    //a blocking channel writes everything before returning
+                    connection.flush();
+                    metrics.getTotal().record(System.nanoTime() - receivedNanos);
+                }
+            }
+        } catch (AsynchronousCloseException e) {
+            //closed for being idle or because the server is stopping
+        } catch (IOException | InvalidFrameException e) {
+            if (isServerWorking) {
+                System.out.println("Error occurred while processing client request: " + e.getMessage());
+            }
+        } finally {
+            clients.remove(channel);
+            synchronized (idleConnections) {
+                idleConnections.remove(connection);
+            }
+            admission.connectionClosed(connection);
+            closeQuietly(channel);
+        }
+    }
+
+    //a connection over its request bytes waits for the others to give some back, a sleeping virtual thread
+    //costs next to nothing, returns false if the connection was closed meanwhile
+    private boolean awaitRequestBytes(ClientConnection connection) {
+        while (!admission.mayReadRequests(connection)) {
+            if (!connection.getChannel().isOpen()) {
+                return false;
+            }
+            try {
+                Thread.sleep(REQUEST_BYTES_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void sweepIdleConnections() {
+        long tickMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleConnections.getTickNanos()));
+        try {
+            while (isServerWorking) {
+                Thread.sleep(tickMillis);
+                synchronized (idleConnections) {
+                    idleConnections.expire(System.nanoTime(), connection -> closeQuietly(connection.getChannel()));
+                }
+            }
+        } catch (InterruptedException e) {
+            //the server is stopping
+        }
+    }
+
+    private void closePersistence() {
+        if (persistence == null) {
+            return;
+        }
+        try {
+            persistence.close();
+        } catch (IOException e) {
+            System.out.println("Error occurred while closing the write-ahead log: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Error occurred while closing a channel: " + e.getMessage());
+        }
+    }
+}
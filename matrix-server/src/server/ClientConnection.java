@@ -0,0 +1,289 @@
+package server;
+
+import matrix.Matrix;
+import protocol.FrameCodec;
+import protocol.InvalidFrameException;
+import protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ClientConnection {
+    public static final String MAIN_MATRIX_NAME = "main";
+
+    private static final int INITIAL_READ_BUFFER_SIZE = 2048;
+
+    private final SocketChannel channel;
+    //kept in write mode between reads, holds the beginning of a frame that is not fully received yet
+    private ByteBuffer readBuffer;
+    private final Deque<ByteBuffer> writeQueue;
+    private long pendingWriteBytes;
+    //requests of one connection are handled one at a time and in order, these wait for their turn
+    private final Deque<InboundRequest> pendingRequests;
+    //volatile since the idle sweeper of the blocking server reads it from another thread
+    private volatile boolean processing;
+    private Protocol protocol;
+    private ReplyMode replyMode;
+    //every matrix of the session by name, points and row requests go to the active one
+    private final Map<String, Matrix> matrices;
+    private String activeMatrixName;
+    //the matrices this connection made and has not published, and their cells
+    //AdmissionControl reads and writes these under the connection's monitor
+    private int ownedMatrices;
+    private long ownedCells;
+    //the published matrices this connection keeps under some name, unpublishing one frees it only once
+    //no connection keeps it any more, AdmissionControl reads and writes it under the connection's monitor
+    private final Set<Matrix> heldShared;
+    //what the read buffer has grown by and the frames read but not processed yet,
+    //AdmissionControl reads and writes it under the connection's monitor
+    private long requestBytes;
+    private boolean closed;
+    private volatile long lastActivityNanos;
+    //the slot of the idle timer wheel the connection is in or -1, only the wheel's owner touches it
+    private int idleSlot;
+
+    public ClientConnection(SocketChannel channel) {
+        this.channel = channel;
+        this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        this.writeQueue = new ArrayDeque<>();
+        this.pendingRequests = new ArrayDeque<>();
+        this.replyMode = ReplyMode.FULL;
+        this.matrices = new HashMap<>();
+        this.heldShared = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.lastActivityNanos = System.nanoTime();
+        this.idleSlot = -1;
+    }
+
+    //returns the payloads of all frames completed by this read, or null if the client has closed its side
+    //every byte the read buffer grows by and every returned payload is charged to the request bytes of the
+    //connection, the caller gives a payload's bytes back once it is processed
+    public List<ByteBuffer> readFrames(AdmissionControl admission) throws IOException, InvalidFrameException {
+        if (!readBuffer.hasRemaining()) {
+            growReadBuffer(admission);
+        }
+        int readBytes = channel.read(readBuffer);
+        if (readBytes < 0) {
+            return null;
+        }
+        lastActivityNanos = System.nanoTime();
+
+        readBuffer.flip();
+        List<ByteBuffer> frames = new ArrayList<>();
+        ByteBuffer payload;
+        while ((payload = FrameCodec.nextFrame(readBuffer, FrameCodec.MAX_REQUEST_SIZE)) != null) {
+            //the payload is a view over the read buffer which is about to be compacted
+            ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+            copy.put(payload);
+            copy.flip();
+            admission.chargeRequestBytes(this, copy.capacity());
+            frames.add(copy);
+        }
+        readBuffer.compact();
+        if (readBuffer.position() >= FrameCodec.HEADER_SIZE) {
+            //turns a bad length away before any of its bytes are buffered
+            FrameCodec.frameLength(readBuffer, 0, FrameCodec.MAX_REQUEST_SIZE);
+        } else if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_READ_BUFFER_SIZE) {
+            //don't keep a huge buffer around after a single big frame
+            admission.releaseRequestBytes(this, readBuffer.capacity() - INITIAL_READ_BUFFER_SIZE);
+            readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        }
+        return frames;
+    }
+
+    //the next read has to grow the read buffer first
+    //drops everything a closed connection still holds, its key or its reply may keep the connection itself
+    //around for a while, called by the thread that reads it once no request of it is processed
+    public void release() {
+        readBuffer = ByteBuffer.allocate(0);
+        writeQueue.clear();
+        pendingWriteBytes = 0;
+        pendingRequests.clear();
+        matrices.clear();
+        activeMatrixName = null;
+    }
+
+    public boolean isReadBufferFull() {
+        return !readBuffer.hasRemaining();
+    }
+
+    public void enqueue(ByteBuffer frame) {
+        pendingWriteBytes += frame.remaining();
+        writeQueue.addLast(frame);
+    }
+
+    //writes as much as the socket accepts, returns true if nothing is left in the queue
+    public boolean flush() throws IOException {
+        while (!writeQueue.isEmpty()) {
+            ByteBuffer head = writeQueue.peekFirst();
+            int written = channel.write(head);
+            pendingWriteBytes -= written;
+            if (written > 0) {
+                lastActivityNanos = System.nanoTime();
+            }
+            if (head.hasRemaining()) {
+                //the socket send buffer is full, wait for OP_WRITE
+                return false;
+            }
+            writeQueue.pollFirst();
+        }
+        return true;
+    }
+
+    public boolean hasPendingWrites() {
+        return !writeQueue.isEmpty();
+    }
+
+    public long getPendingWriteBytes() {
+        return pendingWriteBytes;
+    }
+
+    public void addRequest(InboundRequest request) {
+        pendingRequests.addLast(request);
+    }
+
+    public InboundRequest pollRequest() {
+        return pendingRequests.pollFirst();
+    }
+
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    public boolean isProcessing() {
+        return processing;
+    }
+
+    public void setProcessing(boolean processing) {
+        this.processing = processing;
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    public void setProtocol(Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    public ReplyMode getReplyMode() {
+        return replyMode;
+    }
+
+    public void setReplyMode(ReplyMode replyMode) {
+        this.replyMode = replyMode;
+    }
+
+    //the active matrix, null until the first one is set up
+    public Matrix getMatrix() {
+        return activeMatrixName == null ? null : matrices.get(activeMatrixName);
+    }
+
+    //the matrix from the set-up request, it is called main and becomes the active one
+    //returns the matrix that was called main before, if any
+    public Matrix setMatrix(Matrix matrix) {
+        Matrix previous = putMatrix(MAIN_MATRIX_NAME, matrix);
+        activeMatrixName = MAIN_MATRIX_NAME;
+        return previous;
+    }
+
+    public String getActiveMatrixName() {
+        return activeMatrixName;
+    }
+
+    public Matrix getMatrix(String name) {
+        return matrices.get(name);
+    }
+
+    //returns the matrix that had this name before, if any
+    public Matrix putMatrix(String name, Matrix matrix) {
+        return matrices.put(name, matrix);
+    }
+
+    //whether the matrix is still kept under some name
+    public boolean holds(Matrix matrix) {
+        return matrices.containsValue(matrix);
+    }
+
+    public int getOwnedMatrices() {
+        return ownedMatrices;
+    }
+
+    public void addOwnedMatrices(int matrices) {
+        ownedMatrices += matrices;
+    }
+
+    public long getOwnedCells() {
+        return ownedCells;
+    }
+
+    public void addOwnedCells(long cells) {
+        ownedCells += cells;
+    }
+
+    public Set<Matrix> getHeldShared() {
+        return heldShared;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public void addRequestBytes(long bytes) {
+        requestBytes += bytes;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed(boolean closed) {
+        this.closed = closed;
+    }
+
+    public int getIdleSlot() {
+        return idleSlot;
+    }
+
+    public void setIdleSlot(int idleSlot) {
+        this.idleSlot = idleSlot;
+    }
+
+    public long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    //returns false if there is no matrix with that name
+    public boolean setActiveMatrix(String name) {
+        if (!matrices.containsKey(name)) {
+            return false;
+        }
+        activeMatrixName = name;
+        return true;
+    }
+
+    //a full buffer holds the beginning of a frame longer than the buffer, it doubles as the bytes come
+    //instead of trusting the length in the header, which costs a client nothing to send
+    private void growReadBuffer(AdmissionControl admission) throws InvalidFrameException {
+        int needed = FrameCodec.HEADER_SIZE + FrameCodec.frameLength(readBuffer, 0, FrameCodec.MAX_REQUEST_SIZE);
+        int capacity = (int) Math.min(2L * readBuffer.capacity(), needed);
+        admission.chargeRequestBytes(this, capacity - readBuffer.capacity());
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        readBuffer.flip();
+        bigger.put(readBuffer);
+        readBuffer = bigger;
+    }
+}
@@ -0,0 +1,9 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.List;
+
+//a reply produced by a worker, waiting for the selector thread to queue it on its connection
+public record Completion(SelectionKey key, List<ByteBuffer> reply, long receivedNanos) {
+}
@@ -0,0 +1,83 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+//a hashed timer wheel for idle connections, every connection sits in the slot of its deadline
+//activity only updates the connection's last activity time, the slot is checked once it comes around
+//and a connection that was active in the meantime is moved to the slot of its new deadline,
+//so a busy connection costs nothing per request and an idle one is found within one tick of its deadline
+//not thread safe, it is driven by the thread that owns the connections
+//nanoTime may be negative, ticks are floored so they keep counting up by one and slots never go negative
+public class IdleTimerWheel {
+    private static final long MIN_TICK_NANOS = 10_000_000;
+    private static final int TICKS_PER_TIMEOUT = 32;
+
+    private final long timeoutNanos;
+    private final long tickNanos;
+    private final List<Set<ClientConnection>> slots;
+    private long currentTick;
+
+    public IdleTimerWheel(long timeoutNanos, long nowNanos) {
+        this.timeoutNanos = timeoutNanos;
+        this.tickNanos = Math.max(MIN_TICK_NANOS, timeoutNanos / TICKS_PER_TIMEOUT);
+        //a deadline is never more than one timeout ahead, so one extra slot keeps it from wrapping onto the current one
+        int slotCount = (int) (timeoutNanos / tickNanos) + 2;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; ++i) {
+            slots.add(new HashSet<>());
+        }
+        this.currentTick = Math.floorDiv(nowNanos, tickNanos);
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    public void add(ClientConnection connection) {
+        schedule(connection, connection.getLastActivityNanos() + timeoutNanos);
+    }
+
+    //hands every connection idle for a whole timeout to onIdle, busy ones are moved to their new deadline
+    public void expire(long nowNanos, Consumer<ClientConnection> onIdle) {
+        long nowTick = Math.floorDiv(nowNanos, tickNanos);
+        for (; currentTick <= nowTick; ++currentTick) {
+            Set<ClientConnection> slot = slots.get(Math.floorMod(currentTick, slots.size()));
+            if (slot.isEmpty()) {
+                continue;
+            }
+            List<ClientConnection> due = new ArrayList<>(slot);
+            slot.clear();
+            for (ClientConnection connection : due) {
+                connection.setIdleSlot(-1);
+                if (!connection.getChannel().isOpen()) {
+                    continue;
+                }
+                long deadline = connection.getLastActivityNanos() + timeoutNanos;
+                if (deadline <= nowNanos && !connection.isProcessing()) {
+                    onIdle.accept(connection);
+                } else {
+                    schedule(connection, Math.max(deadline, nowNanos + tickNanos));
+                }
+            }
+        }
+    }
+
+    //called once the connection is closed, so the wheel does not keep it and all it holds until its slot comes around
+    public void remove(ClientConnection connection) {
+        if (connection.getIdleSlot() >= 0) {
+            slots.get(connection.getIdleSlot()).remove(connection);
+            connection.setIdleSlot(-1);
+        }
+    }
+
+    private void schedule(ClientConnection connection, long deadlineNanos) {
+        long tick = Math.max(Math.floorDiv(deadlineNanos, tickNanos), currentTick);
+        int slot = Math.floorMod(tick, slots.size());
+        slots.get(slot).add(connection);
+        connection.setIdleSlot(slot);
+    }
+}
@@ -0,0 +1,6 @@
+package server;
+
+import java.nio.ByteBuffer;
+
+public record InboundRequest(ByteBuffer payload, long receivedNanos) {
+}
@@ -0,0 +1,11 @@
+package server;
+
+public class LimitExceededException extends Exception {
+    public LimitExceededException(String message) {
+        super(message);
+    }
+
+    public LimitExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,50 @@
+package server;
+
+import matrix.Matrix;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//matrices published under a name, they outlive the connection that made them and any connection can open them
+public class MatrixRegistry {
+    //names are logged with their length in two bytes, this keeps them far from that
+    public static final int MAX_NAME_BYTES = 255;
+
+    private final ConcurrentMap<String, Matrix> matrices = new ConcurrentHashMap<>();
+
+    //returns false if the name is already taken, synchronized so nobody takes the name between the check and the put
+    //and a rejected matrix is left as it was
+    public synchronized boolean publish(String name, Matrix matrix) {
+        if (matrices.containsKey(name)) {
+            return false;
+        }
+        //writers of different rows work on a shared matrix at the same time, a sparse one can't take that,
+        //nobody can open the matrix before it is put
+        matrix.makeDense();
+        matrices.put(name, matrix);
+        return true;
+    }
+
+    //returns false if the name is not published for this matrix
+    public boolean unpublish(String name, Matrix matrix) {
+        return matrices.remove(name, matrix);
+    }
+
+    public static boolean isValidName(String name) {
+        return name.getBytes(StandardCharsets.UTF_8).length <= MAX_NAME_BYTES;
+    }
+
+    public Matrix get(String name) {
+        return matrices.get(name);
+    }
+
+    public boolean contains(Matrix matrix) {
+        return matrices.containsValue(matrix);
+    }
+
+    public Set<String> getNames() {
+        return matrices.keySet();
+    }
+}
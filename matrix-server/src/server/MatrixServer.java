@@ -0,0 +1,17 @@
+package server;
+
+import metrics.ServerMetrics;
+
+//what Main needs from a server, whichever mode it runs in
+public interface MatrixServer extends Runnable {
+    void stop();
+
+    ServerMetrics getMetrics();
+
+    static MatrixServer create(ServerConfig config) {
+        return switch (config.mode()) {
+            case SELECTOR -> new Server(config);
+            case VIRTUAL_THREADS -> new BlockingServer(config);
+        };
+    }
+}
@@ -0,0 +1,101 @@
+package server;
+
+import matrix.Matrix;
+import matrix.MatrixOperations;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+//the commands that compute something out of the matrices of a session
+public class OperationHandler {
+    public static final String ADD = "add";
+    public static final String MULTIPLY = "multiply";
+    public static final String TRANSPOSE = "transpose";
+    public static final String ROW_SUMS = "rowsums";
+    public static final String COL_SUMS = "colsums";
+    public static final String MIN_MAX = "minmax";
+
+    private final MatrixOperations operations;
+    private final AdmissionControl admission;
+
+    public OperationHandler(MatrixOperations operations, AdmissionControl admission) {
+        this.operations = operations;
+        this.admission = admission;
+    }
+
+    public static boolean isOperation(String command) {
+        return switch (command) {
+            case ADD, MULTIPLY, TRANSPOSE, ROW_SUMS, COL_SUMS, MIN_MAX -> true;
+            default -> false;
+        };
+    }
+
+    //add <first> <second> <result>, multiply <first> <second> <result>, transpose <matrix> <result>,
+    //rowsums <matrix>, colsums <matrix>, minmax <matrix>
+    public String handle(ClientConnection connection, String[] words) {
+        try {
+            return switch (words[0]) {
+                //the result's cells are reserved before it is computed
+                case ADD -> {
+                    checkArguments(words, 3);
+                    Matrix first = find(connection, words[1]);
+                    Matrix second = find(connection, words[2]);
+                    yield store(connection, words[3], admission.allocate(connection, first.getRows(), first.getCols(),
+                            () -> operations.add(first, second)));
+                }
+                case MULTIPLY -> {
+                    checkArguments(words, 3);
+                    Matrix first = find(connection, words[1]);
+                    Matrix second = find(connection, words[2]);
+                    yield store(connection, words[3], admission.allocate(connection, first.getRows(), second.getCols(),
+                            () -> operations.multiply(first, second)));
+                }
+                case TRANSPOSE -> {
+                    checkArguments(words, 2);
+                    Matrix matrix = find(connection, words[1]);
+                    yield store(connection, words[2], admission.allocate(connection, matrix.getCols(), matrix.getRows(),
+                            () -> operations.transpose(matrix)));
+                }
+                case ROW_SUMS -> {
+                    checkArguments(words, 1);
+                    yield join(operations.rowSums(find(connection, words[1])));
+                }
+                case COL_SUMS -> {
+                    checkArguments(words, 1);
+                    yield join(operations.colSums(find(connection, words[1])));
+                }
+                case MIN_MAX -> {
+                    checkArguments(words, 1);
+                    int[] minMax = operations.minMax(find(connection, words[1]));
+                    yield minMax[0] + " " + minMax[1];
+                }
+                default -> "unknown operation";
+            };
+        } catch (IllegalArgumentException | LimitExceededException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static void checkArguments(String[] words, int expected) {
+        if (words.length != expected + 1) {
+            throw new IllegalArgumentException(words[0] + " needs " + expected + " matrix names");
+        }
+    }
+
+    private static Matrix find(ClientConnection connection, String name) {
+        Matrix matrix = connection.getMatrix(name);
+        if (matrix == null) {
+            throw new IllegalArgumentException("no matrix named " + name);
+        }
+        return matrix;
+    }
+
+    private String store(ClientConnection connection, String name, Matrix result) {
+        admission.dropped(connection, connection.putMatrix(name, result));
+        return "matrix " + name + " " + result.getRows() + " " + result.getCols() + " created";
+    }
+
+    private static String join(long[] values) {
+        return Arrays.stream(values).mapToObj(Long::toString).collect(Collectors.joining(" "));
+    }
+}
@@ -0,0 +1,279 @@
+package server;
+
+import metrics.ServerMetrics;
+import protocol.FrameCodec;
+import protocol.InvalidFrameException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+//one selector thread and the connections handed to it, a connection never moves to another reactor
+//so its state is only ever touched by this thread and by the one worker running its current request
+public class Reactor implements Runnable {
+    //once this many reply bytes wait for a slow client we stop reading its requests
+    private static final long MAX_PENDING_WRITE_BYTES = 16L * 1024 * 1024;
+    private static final int MAX_PENDING_REQUESTS = 64;
+
+    private final Selector selector;
+    private final RequestHandler requestHandler;
+    private final ExecutorService workers;
+    private final ServerMetrics metrics;
+    private final AdmissionControl admission;
+    private final IdleTimerWheel idleConnections;
+    //channels accepted by the acceptor, registered by this thread since registering blocks while it selects
+    private final Queue<SocketChannel> newChannels;
+    private final Queue<Completion> completions;
+    //connections not read from because they or the server hold too many request bytes,
+    //retried on every turn of the loop since other connections and reactors give bytes back
+    private final Set<SelectionKey> waitingForRequestBytes;
+    private volatile boolean isWorking;
+
+    public Reactor(RequestHandler requestHandler, ExecutorService workers, ServerMetrics metrics,
+                   AdmissionControl admission) throws IOException {
+        this.selector = Selector.open();
+        this.requestHandler = requestHandler;
+        this.workers = workers;
+        this.metrics = metrics;
+        this.admission = admission;
+        this.idleConnections = new IdleTimerWheel(admission.getLimits().idleTimeoutNanos(), System.nanoTime());
+        this.newChannels = new ConcurrentLinkedQueue<>();
+        this.completions = new ConcurrentLinkedQueue<>();
+        this.waitingForRequestBytes = new HashSet<>();
+        this.isWorking = true;
+    }
+
+    //called from the acceptor thread once the connection is admitted
+    public void assign(SocketChannel channel) {
+        newChannels.add(channel);
+        selector.wakeup();
+    }
+
+    public void stop() {
+        isWorking = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            long tickMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleConnections.getTickNanos()));
+            while (isWorking) {
+                try {
+                    //the timeout is what drives the idle timer wheel
+                    int readyChannels = selector.select(tickMillis);
+                    metrics.recordSelectorWakeup();
+                    registerNewChannels();
+                    processCompletions();
+                    resumeReading();
+                    idleConnections.expire(System.nanoTime(), this::closeIdleConnection);
+                    if (readyChannels == 0) {
+                        //woken up for a new channel, a finished request, a tick or to stop
+                        continue;
+                    }
+
+                    Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                    while (keyIterator.hasNext()) {
+                        SelectionKey key = keyIterator.next();
+                        keyIterator.remove();
+                        try {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        } catch (IOException | InvalidFrameException e) {
+                            //a broken client must not take the others down with it
+                            System.out.println("Error occurred while processing client request: " + e.getMessage());
+                            closeConnection(key);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("Error occurred while processing client request: " + e.getMessage());
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeConnection(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.out.println("Error occurred while closing a selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private void registerNewChannels() {
+        SocketChannel channel;
+        while ((channel = newChannels.poll()) != null) {
+            ClientConnection connection = new ClientConnection(channel);
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, connection);
+                idleConnections.add(connection);
+            } catch (IOException e) {
+                System.out.println("Error occurred while registering a client: " + e.getMessage());
+                admission.connectionClosed(connection);
+                try {
+                    channel.close();
+                } catch (IOException closeException) {
+                    System.out.println("Error occurred while closing client connection: " + closeException.getMessage());
+                }
+            }
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException, InvalidFrameException {
+        ClientConnection connection = (ClientConnection) key.attachment();
+        //other connections of this selection may have used up the request bytes since the interest ops were set
+        if (!admission.mayReadRequests(connection)) {
+            updateInterestOps(key);
+            return;
+        }
+        List<ByteBuffer> frames = connection.readFrames(admission);
+        if (frames == null) {
+            //if client socket side has closed
+            closeConnection(key);
+            return;
+        }
+        long receivedNanos = System.nanoTime();
+        for (ByteBuffer frame : frames) {
+            metrics.recordRequest();
+            metrics.recordBytesIn(FrameCodec.HEADER_SIZE + frame.remaining());
+            connection.addRequest(new InboundRequest(frame, receivedNanos));
+        }
+        dispatch(key);
+        write(key);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        ClientConnection connection = (ClientConnection) key.attachment();
+        connection.flush();
+        updateInterestOps(key);
+    }
+
+    private void updateInterestOps(SelectionKey key) {
+        ClientConnection connection = (ClientConnection) key.attachment();
+        int interestOps = 0;
+        //a client that does not keep up with its replies or floods us with requests
+        //is not read from until it catches up
+        if (connection.getPendingWriteBytes() <= MAX_PENDING_WRITE_BYTES &&
+                connection.getPendingRequestCount() <= MAX_PENDING_REQUESTS) {
+            if (admission.mayReadRequests(connection)) {
+                interestOps |= SelectionKey.OP_READ;
+            } else {
+                waitingForRequestBytes.add(key);
+            }
+        }
+        if (connection.hasPendingWrites()) {
+            interestOps |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(interestOps);
+    }
+
+    //hands the next request of the connection to the workers unless one of its requests is already there
+    private void dispatch(SelectionKey key) {
+        ClientConnection connection = (ClientConnection) key.attachment();
+        while (!connection.isProcessing() && connection.getPendingRequestCount() > 0) {
+            InboundRequest request = connection.pollRequest();
+            connection.setProcessing(true);
+            try {
+                workers.execute(() -> process(key, connection, request));
+            } catch (RejectedExecutionException e) {
+                admission.releaseRequestBytes(connection, request.payload().capacity());
+                connection.setProcessing(false);
+                connection.enqueue(FrameCodec.encode("server is busy, try again later"));
+            }
+        }
+    }
+
+    //runs on a worker, the reply goes back to this reactor's thread
+    private void process(SelectionKey key, ClientConnection connection, InboundRequest request) {
+        metrics.getQueueWait().record(System.nanoTime() - request.receivedNanos());
+        List<ByteBuffer> reply;
+        try {
+            reply = requestHandler.handle(connection, request.payload());
+        } catch (RuntimeException e) {
+            System.out.println("Error occurred while processing client request: " + e.getMessage());
+            reply = List.of(FrameCodec.encode("internal server error"));
+        } finally {
+            admission.releaseRequestBytes(connection, request.payload().capacity());
+        }
+        completions.add(new Completion(key, reply, request.receivedNanos()));
+        selector.wakeup();
+    }
+
+    private void processCompletions() {
+        Completion completion;
+        while ((completion = completions.poll()) != null) {
+            SelectionKey key = completion.key();
+            metrics.getTotal().record(System.nanoTime() - completion.receivedNanos());
+            if (!key.isValid()) {
+                //the client left while its request was processed, connectionClosed could not release it then
+                ((ClientConnection) key.attachment()).release();
+                continue;
+            }
+            ClientConnection connection = (ClientConnection) key.attachment();
+            for (ByteBuffer buffer : completion.reply()) {
+                metrics.recordBytesOut(buffer.remaining());
+                connection.enqueue(buffer);
+            }
+            connection.setProcessing(false);
+            dispatch(key);
+            try {
+                write(key);
+            } catch (IOException e) {
+                System.out.println("Error occurred while writing to client: " + e.getMessage());
+                closeConnection(key);
+            }
+        }
+    }
+
+    private void resumeReading() {
+        if (waitingForRequestBytes.isEmpty()) {
+            return;
+        }
+        List<SelectionKey> waiting = new ArrayList<>(waitingForRequestBytes);
+        waitingForRequestBytes.clear();
+        for (SelectionKey key : waiting) {
+            //puts the key back if it still has to wait
+            if (key.isValid()) {
+                updateInterestOps(key);
+            }
+        }
+    }
+
+    private void closeIdleConnection(ClientConnection connection) {
+        SelectionKey key = connection.getChannel().keyFor(selector);
+        if (key != null) {
+            closeConnection(key);
+        }
+    }
+
+    private void closeConnection(SelectionKey key) {
+        ClientConnection connection = (ClientConnection) key.attachment();
+        idleConnections.remove(connection);
+        admission.connectionClosed(connection);
+        waitingForRequestBytes.remove(key);
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            System.out.println("Error occurred while closing client connection: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package server;
+
+//what a connection gets back after a points batch
+public enum ReplyMode {
+    //the whole matrix
+    FULL,
+    //only the cells whose value changed
+    DELTA
+}
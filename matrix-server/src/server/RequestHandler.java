@@ -0,0 +1,485 @@
+package server;
+
+import files.MatrixFileException;
+import files.MatrixFileFormat;
+import files.MatrixFiles;
+import matrix.FillEngine;
+import matrix.InvalidMatrixDimensionsException;
+import matrix.Matrix;
+import matrix.MatrixRenderer;
+import matrix.StorageType;
+import metrics.ServerMetrics;
+import persistence.MatrixPersistence;
+import point.InvalidPointException;
+import point.PointBatch;
+import point.PointParser;
+import protocol.BinaryProtocol;
+import protocol.FrameCodec;
+import protocol.Protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+//turns one request frame of a connection into its reply frame, runs on the worker threads
+public class RequestHandler {
+    private static final String MODE = "mode";
+    private static final String MODE_FULL = "full";
+    private static final String MODE_DELTA = "delta";
+    private static final String SNAPSHOT = "snapshot";
+    private static final String ROWS = "rows";
+    private static final String NEW = "new";
+    private static final String USE = "use";
+    private static final String PUBLISH = "publish";
+    private static final String UNPUBLISH = "unpublish";
+    private static final String OPEN = "open";
+    private static final String IMPORT = "import";
+    private static final String EXPORT = "export";
+    private static final Set<String> NEEDS_ACTIVE_MATRIX = Set.of(SNAPSHOT, ROWS, PUBLISH, EXPORT);
+    private static final byte[] CHANGED_SUFFIX = " changed\n".getBytes(StandardCharsets.US_ASCII);
+    //small enough to stay clear of the garbage collector's humongous allocations
+    private static final int REPLY_CHUNK_SIZE = 64 * 1024;
+    private static final int MIN_REPLY_CHUNK_SIZE = FrameCodec.HEADER_SIZE + MatrixRenderer.MAX_CELL_LENGTH;
+
+    private final FillEngine fillEngine;
+    private final OperationHandler operationHandler;
+    private final MatrixRegistry registry;
+    private final AdmissionControl admission;
+    //null when published matrices are kept in memory only
+    private final MatrixPersistence persistence;
+    //null when import and export are turned off
+    private final MatrixFiles files;
+    private final ServerMetrics metrics;
+
+    public RequestHandler(FillEngine fillEngine, OperationHandler operationHandler, MatrixRegistry registry,
+                          AdmissionControl admission, MatrixPersistence persistence, MatrixFiles files,
+                          ServerMetrics metrics) {
+        this.fillEngine = fillEngine;
+        this.operationHandler = operationHandler;
+        this.registry = registry;
+        this.admission = admission;
+        this.persistence = persistence;
+        this.files = files;
+        this.metrics = metrics;
+    }
+
+    //a reply is one frame, possibly split over several buffers that are written one after another
+    public List<ByteBuffer> handle(ClientConnection connection, ByteBuffer payload) {
+        if (connection.getProtocol() == null) {
+            //the first frame decides how the client talks to us
+            connection.setProtocol(BinaryProtocol.isHandshake(payload) ? Protocol.BINARY : Protocol.TEXT);
+        }
+        if (connection.getProtocol() == Protocol.BINARY) {
+            return handleBinaryRequest(connection, payload);
+        }
+        if (connection.getMatrix() != null && PointParser.startsWithNumber(payload)) {
+            //points are the bulk of the traffic, they are read from the bytes without decoding a string first
+            return handlePoints(connection, payload);
+        }
+        return handleRequest(connection, StandardCharsets.UTF_8.decode(payload).toString().trim());
+    }
+
+    private List<ByteBuffer> handleRequest(ClientConnection connection, String clientInput) {
+        if (!clientInput.isEmpty() && Character.isLetter(clientInput.charAt(0))) {
+            //commands are allowed before the set-up, a client may just want to open a shared matrix
+            return handleCommand(connection, clientInput.split("\\s+"));
+        }
+        if (connection.getMatrix() == null) {
+            try {
+                return createMatrix(connection, setUpMatrix(connection, clientInput));
+            } catch (InvalidMatrixDimensionsException e) {
+                return text("invalid dimensions format passed to server");
+            } catch (LimitExceededException e) {
+                return text(e.getMessage());
+            }
+        }
+        //points never get here, whatever else is not a command cannot be read
+        return text("invalid point passed");
+    }
+
+    private List<ByteBuffer> handlePoints(ClientConnection connection, ByteBuffer payload) {
+        long parseStart = System.nanoTime();
+        try {
+            PointBatch points = PointParser.parse(payload);
+            Matrix theMatrix = connection.getMatrix();
+            //removes all points that go out of bounds
+            //any cell that is passed twice will be added only as its last input
+            points.retainLastWithin(theMatrix.getRows(), theMatrix.getCols());
+            return applyPoints(connection, points, parseStart);
+        } catch (InvalidPointException e) {
+            return text("invalid point passed");
+        }
+    }
+
+    private List<ByteBuffer> handleCommand(ClientConnection connection, String[] words) {
+        if (NEEDS_ACTIVE_MATRIX.contains(words[0]) && connection.getMatrix() == null) {
+            return text("set up or open a matrix first");
+        }
+        switch (words[0]) {
+            case MODE -> {
+                if (words.length == 2 && words[1].equals(MODE_FULL)) {
+                    return setReplyMode(connection, ReplyMode.FULL);
+                }
+                if (words.length == 2 && words[1].equals(MODE_DELTA)) {
+                    return setReplyMode(connection, ReplyMode.DELTA);
+                }
+                return text("mode must be " + MODE_FULL + " or " + MODE_DELTA);
+            }
+            case SNAPSHOT -> {
+                return renderRows(connection.getMatrix(), 1, connection.getMatrix().getRows());
+            }
+            case ROWS -> {
+                if (words.length != 3) {
+                    return text("rows needs the first and the last row");
+                }
+                try {
+                    return renderRows(connection.getMatrix(), Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+                } catch (NumberFormatException e) {
+                    return text("rows needs the first and the last row");
+                }
+            }
+            case NEW -> {
+                //new <name> <rows> <cols> [storage]
+                if (words.length < 4) {
+                    return text("new needs a name, rows and cols");
+                }
+                try {
+                    Matrix matrix = setUpMatrix(connection, String.join(" ", Arrays.copyOfRange(words, 2, words.length)));
+                    admission.dropped(connection, connection.putMatrix(words[1], matrix));
+                    return text("matrix " + words[1] + " " + matrix.getRows() + " " + matrix.getCols() + " created");
+                } catch (InvalidMatrixDimensionsException e) {
+                    return text("invalid dimensions format passed to server");
+                } catch (LimitExceededException e) {
+                    return text(e.getMessage());
+                }
+            }
+            case PUBLISH -> {
+                if (words.length != 2) {
+                    return text("publish needs a name");
+                }
+                if (!MatrixRegistry.isValidName(words[1])) {
+                    return text("a published name can be at most " + MatrixRegistry.MAX_NAME_BYTES + " bytes");
+                }
+                Matrix matrix = connection.getMatrix();
+                //a matrix this connection opened is not its own, it may still publish it under another name
+                //unless the matrices are persisted
+                boolean ownMatrix = !admission.isShared(matrix);
+                if (persistence != null && registry.contains(matrix)) {
+                    return text("a published matrix can't get a second name while persistence is on");
+                }
+                boolean published;
+                try {
+                    published = persistence == null ? registry.publish(words[1], matrix) :
+                            persistence.publish(words[1], matrix);
+                } catch (IllegalArgumentException e) {
+                    return text(e.getMessage());
+                }
+                if (!published) {
+                    return text("a matrix named " + words[1] + " is already published");
+                }
+                if (ownMatrix) {
+                    admission.published(connection, matrix);
+                }
+                admission.dropped(connection, connection.putMatrix(words[1], matrix));
+                connection.setActiveMatrix(words[1]);
+                return text("published " + words[1]);
+            }
+            case UNPUBLISH -> {
+                Matrix shared = words.length == 2 ? registry.get(words[1]) : null;
+                boolean unpublished = shared != null && (persistence == null ? registry.unpublish(words[1], shared) :
+                        persistence.unpublish(words[1], shared));
+                if (!unpublished) {
+                    return text("unpublish needs the name of a published matrix");
+                }
+                //connections that opened the matrix keep using it, its cells are free once the last one lets go
+                admission.unpublished(shared);
+                return text("unpublished " + words[1]);
+            }
+            case OPEN -> {
+                Matrix shared = words.length == 2 ? registry.get(words[1]) : null;
+                //the name may have been unpublished and the matrix freed right after the lookup
+                if (shared == null || !admission.tryHold(connection, shared)) {
+                    return text("open needs the name of a published matrix");
+                }
+                admission.dropped(connection, connection.putMatrix(words[1], shared));
+                connection.setActiveMatrix(words[1]);
+                return text("opened " + words[1] + " " + shared.getRows() + " " + shared.getCols());
+            }
+            case IMPORT -> {
+                //import <name> <file> [csv|bin]
+                if (files == null) {
+                    return text("import and export are turned off");
+                }
+                if (words.length != 3 && words.length != 4) {
+                    return text("import needs a name and a file");
+                }
+                return importMatrix(connection, words[1], words[2], words.length == 4 ? words[3] : null);
+            }
+            case EXPORT -> {
+                //export <file> [csv|bin]
+                if (files == null) {
+                    return text("import and export are turned off");
+                }
+                if (words.length != 2 && words.length != 3) {
+                    return text("export needs a file");
+                }
+                return exportMatrix(connection.getMatrix(), words[1], words.length == 3 ? words[2] : null);
+            }
+            case USE -> {
+                if (words.length != 2 || !connection.setActiveMatrix(words[1])) {
+                    return text("use needs the name of an existing matrix");
+                }
+                return text("using " + words[1]);
+            }
+            default -> {
+                if (OperationHandler.isOperation(words[0])) {
+                    return text(operationHandler.handle(connection, words));
+                }
+                return text("unknown operation");
+            }
+        }
+    }
+
+    private List<ByteBuffer> handleBinaryRequest(ClientConnection connection, ByteBuffer payload) {
+        if (connection.getMatrix() == null) {
+            boolean hasStorageType = payload.remaining() == BinaryProtocol.HANDSHAKE_SIZE + Byte.BYTES;
+            if ((payload.remaining() != BinaryProtocol.HANDSHAKE_SIZE && !hasStorageType) ||
+                    !BinaryProtocol.isHandshake(payload)) {
+                return text("invalid dimensions format passed to server");
+            }
+            payload.position(payload.position() + BinaryProtocol.MAGIC.length);
+            try {
+                int rows = payload.getInt();
+                int cols = payload.getInt();
+                StorageType storageType = hasStorageType ? BinaryProtocol.decodeStorageType(payload.get()) : null;
+                if (rows < 1 || cols < 1) {
+                    return text("invalid dimensions format passed to server");
+                }
+                return createMatrix(connection,
+                        admission.allocate(connection, rows, cols, () -> new Matrix(rows, cols, storageType)));
+            } catch (IllegalArgumentException e) {
+                return text("invalid dimensions format passed to server");
+            } catch (LimitExceededException e) {
+                return text(e.getMessage());
+            }
+        }
+        if (!payload.hasRemaining()) {
+            return text("unknown operation");
+        }
+        byte operation = payload.get();
+        switch (operation) {
+            case BinaryProtocol.OP_POINTS -> {
+                try {
+                    long parseStart = System.nanoTime();
+                    Matrix theMatrix = connection.getMatrix();
+                    PointBatch points = BinaryProtocol.decodePoints(payload);
+                    //a cell passed more than once is taken care of by the fill engine keeping the last value
+                    points.retainWithin(theMatrix.getRows(), theMatrix.getCols());
+                    return applyPoints(connection, points, parseStart);
+                } catch (InvalidPointException e) {
+                    return text("invalid point passed");
+                }
+            }
+            case BinaryProtocol.OP_MODE -> {
+                if (payload.remaining() != Byte.BYTES) {
+                    return text("mode must be " + MODE_FULL + " or " + MODE_DELTA);
+                }
+                byte mode = payload.get();
+                if (mode == BinaryProtocol.MODE_FULL) {
+                    return setReplyMode(connection, ReplyMode.FULL);
+                }
+                if (mode == BinaryProtocol.MODE_DELTA) {
+                    return setReplyMode(connection, ReplyMode.DELTA);
+                }
+                return text("mode must be " + MODE_FULL + " or " + MODE_DELTA);
+            }
+            case BinaryProtocol.OP_SNAPSHOT -> {
+                return renderRows(connection.getMatrix(), 1, connection.getMatrix().getRows());
+            }
+            case BinaryProtocol.OP_ROWS -> {
+                if (payload.remaining() != 2 * Integer.BYTES) {
+                    return text("rows needs the first and the last row");
+                }
+                return renderRows(connection.getMatrix(), payload.getInt(), payload.getInt());
+            }
+            default -> {
+                return text("unknown operation");
+            }
+        }
+    }
+
+    private List<ByteBuffer> createMatrix(ClientConnection connection, Matrix matrix) {
+        admission.dropped(connection, connection.setMatrix(matrix));
+        return text("matrix " + matrix.getRows() + " " + matrix.getCols() + " created");
+    }
+
+    //format may be null to go by the file name
+    private List<ByteBuffer> importMatrix(ClientConnection connection, String name, String fileName, String format) {
+        try {
+            Path file = files.resolve(fileName);
+            MatrixFileFormat fileFormat = format == null ? MatrixFileFormat.forFile(file) : MatrixFileFormat.fromName(format);
+            MatrixFiles.Dimensions dimensions = files.readDimensions(file, fileFormat);
+            int rows = dimensions.rows();
+            int cols = dimensions.cols();
+            //every cell gets written, a sparse matrix would only turn dense halfway through
+            Matrix matrix = admission.allocate(connection, rows, cols,
+                    () -> new Matrix(rows, cols, StorageType.denseForDimensions(rows, cols)));
+            try {
+                files.load(file, fileFormat, matrix);
+            } catch (MatrixFileException e) {
+                admission.dropped(connection, matrix);
+                throw e;
+            }
+            admission.dropped(connection, connection.putMatrix(name, matrix));
+            return text("imported " + name + " " + rows + " " + cols);
+        } catch (IllegalArgumentException | MatrixFileException | LimitExceededException e) {
+            return text(e.getMessage());
+        }
+    }
+
+    private List<ByteBuffer> exportMatrix(Matrix matrix, String fileName, String format) {
+        try {
+            Path file = files.resolve(fileName);
+            MatrixFileFormat fileFormat = format == null ? MatrixFileFormat.forFile(file) : MatrixFileFormat.fromName(format);
+            files.save(matrix, file, fileFormat);
+            return text("exported " + fileName + " " + matrix.getRows() + " " + matrix.getCols());
+        } catch (IllegalArgumentException | MatrixFileException e) {
+            return text(e.getMessage());
+        }
+    }
+
+    private List<ByteBuffer> setReplyMode(ClientConnection connection, ReplyMode replyMode) {
+        connection.setReplyMode(replyMode);
+        return text("mode " + replyMode.name().toLowerCase());
+    }
+
+    private List<ByteBuffer> applyPoints(ClientConnection connection, PointBatch points, long parseStart) {
+        Matrix matrix = connection.getMatrix();
+        long fillStart = System.nanoTime();
+        metrics.getParse().record(fillStart - parseStart);
+
+        boolean delta = connection.getReplyMode() == ReplyMode.DELTA;
+        int[] previous = delta ? new int[points.size()] : null;
+        String name = connection.getActiveMatrixName();
+        if (persistence != null && persistence.isPersistent(name, matrix)) {
+            //logged under the row locks so the log has the batches in the order they hit the matrix
+            long[] logPosition = new long[1];
+            fillEngine.fill(matrix, points, previous, () -> logPosition[0] = persistence.logPoints(name, matrix, points));
+            //the reply only goes out once the batch survives a crash
+            persistence.awaitDurable(logPosition[0]);
+        } else {
+            fillEngine.fill(matrix, points, previous);
+        }
+        long renderStart = System.nanoTime();
+        metrics.getFill().record(renderStart - fillStart);
+
+        List<ByteBuffer> reply = delta ? renderDelta(points, previous) : renderFrame(matrix, new MatrixRenderer(matrix));
+        metrics.getRender().record(System.nanoTime() - renderStart);
+        return reply;
+    }
+
+    //first row and last row are 1 based and both included
+    private List<ByteBuffer> renderRows(Matrix matrix, int firstRow, int lastRow) {
+        if (firstRow < 1 || lastRow > matrix.getRows() || firstRow > lastRow) {
+            return text("rows must be between 1 and " + matrix.getRows());
+        }
+        long renderStart = System.nanoTime();
+        List<ByteBuffer> rows = renderFrame(matrix, new MatrixRenderer(matrix, firstRow - 1, lastRow));
+        metrics.getRender().record(System.nanoTime() - renderStart);
+        return rows;
+    }
+
+    //big matrices are rendered into several chunks so no single huge array has to be allocated
+    //the length is only known once everything is rendered, since other connections may change
+    //cells of a shared matrix in the meantime, so it is written into the header at the end
+    private List<ByteBuffer> renderFrame(Matrix matrix, MatrixRenderer renderer) {
+        //single digit cells, anything longer simply takes more chunks
+        long estimate = FrameCodec.HEADER_SIZE + (long) renderer.remainingRows() * (2L * matrix.getCols() + 1);
+        ByteBuffer header = ByteBuffer.allocate((int) Math.max(MIN_REPLY_CHUNK_SIZE, Math.min(estimate, REPLY_CHUNK_SIZE)));
+        header.position(FrameCodec.HEADER_SIZE);
+
+        List<ByteBuffer> chunks = new ArrayList<>();
+        long length = -FrameCodec.HEADER_SIZE;
+        ByteBuffer chunk = header;
+        while (!renderer.render(chunk)) {
+            length += chunk.position();
+            if (length > FrameCodec.MAX_FRAME_SIZE) {
+                return text("reply is too big, ask for fewer rows");
+            }
+            chunk.flip();
+            chunks.add(chunk);
+            chunk = ByteBuffer.allocate(REPLY_CHUNK_SIZE);
+        }
+        length += chunk.position();
+        if (length > FrameCodec.MAX_FRAME_SIZE) {
+            return text("reply is too big, ask for fewer rows");
+        }
+        chunk.flip();
+        chunks.add(chunk);
+        header.putInt(0, (int) length);
+        return chunks;
+    }
+
+    //one "row col value" line for every write that changed its cell, in the order they were applied,
+    //so a cell passed twice may show up twice but replaying the lines always gives the current matrix
+    private List<ByteBuffer> renderDelta(PointBatch points, int[] previous) {
+        int changed = 0;
+        int length = 0;
+        for (int i = 0; i < points.size(); ++i) {
+            if (previous[i] != points.getValue(i)) {
+                ++changed;
+                length += MatrixRenderer.digitCount(points.getRow(i) + 1) +
+                        MatrixRenderer.digitCount(points.getCol(i) + 1) +
+                        MatrixRenderer.digitCount(points.getValue(i)) + 3;
+            }
+        }
+        length += MatrixRenderer.digitCount(changed) + CHANGED_SUFFIX.length;
+
+        ByteBuffer frame = ByteBuffer.allocate(FrameCodec.HEADER_SIZE + length);
+        frame.putInt(length);
+        MatrixRenderer.putInt(frame, changed);
+        frame.put(CHANGED_SUFFIX);
+        for (int i = 0; i < points.size(); ++i) {
+            if (previous[i] != points.getValue(i)) {
+                MatrixRenderer.putInt(frame, points.getRow(i) + 1);
+                frame.put((byte) ' ');
+                MatrixRenderer.putInt(frame, points.getCol(i) + 1);
+                frame.put((byte) ' ');
+                MatrixRenderer.putInt(frame, points.getValue(i));
+                frame.put((byte) '\n');
+            }
+        }
+        frame.flip();
+        return List.of(frame);
+    }
+
+    private static List<ByteBuffer> text(String reply) {
+        return List.of(FrameCodec.encode(reply));
+    }
+
+    //the cells are reserved before the matrix is made, so a request that is too big never gets allocated
+    private Matrix setUpMatrix(ClientConnection connection, String request)
+            throws InvalidMatrixDimensionsException, LimitExceededException {
+        //rows and cols, optionally followed by the storage to use
+        String[] dimensions = request.split("\\s+");
+        if (dimensions.length != 2 && dimensions.length != 3) {
+            throw new InvalidMatrixDimensionsException("dimensions passed are not 2");
+        }
+        try {
+            int rows = Integer.parseInt(dimensions[0]);
+            int cols = Integer.parseInt(dimensions[1]);
+            StorageType storageType = dimensions.length == 3 ? StorageType.fromName(dimensions[2]) : null;
+            if (rows < 1 || cols < 1) {
+                throw new InvalidMatrixDimensionsException("dimensions must be positive");
+            }
+            return admission.allocate(connection, rows, cols, () -> new Matrix(rows, cols, storageType));
+        } catch (IllegalArgumentException e) {
+            //NumberFormatException is also an IllegalArgumentException
+            throw new InvalidMatrixDimensionsException("invalid dimensions passed", e);
+        }
+    }
+}
@@ -1,217 +1,192 @@
 package server;
 
-import matrix.InvalidMatrixDimensionsException;
-import matrix.MatrixFiller;
-import point.InvalidPointException;
-import matrix.Matrix;
-import point.Point;
+import files.MatrixFiles;
+import matrix.FillEngine;
+import matrix.MatrixOperations;
+import metrics.MetricsExporter;
+import metrics.ServerMetrics;
+import persistence.MatrixPersistence;
+import protocol.FrameCodec;
+
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-public class Server implements Runnable{
-    private static final int BUFFER_SIZE = 2048;
+//the thread running the server only accepts, accepted connections are spread round-robin over the reactors
+public class Server implements MatrixServer {
+    //requests beyond this many waiting for a worker are answered with a busy reply
+    private static final int WORKER_QUEUE_CAPACITY = 1024;
 
     private static final String HOST = "localhost";
 
-    private final int port;
-    private boolean isServerWorking;
+    private final ServerConfig config;
+    private volatile boolean isServerWorking;
 
-    private ByteBuffer buffer;
     private Selector selector;
+    private final ServerMetrics metrics;
+    private final MatrixRegistry registry;
+    private final AdmissionControl admission;
+    private final MatrixPersistence persistence;
+    private final RequestHandler requestHandler;
+    //only set if the config has an admin port
+    private MetricsExporter exporter;
+    private final ExecutorService workers;
+    private final List<Reactor> reactors;
+    private int nextReactor;
 
     public Server(int port) {
-        this.port = port;
+        this(port, null);
+    }
+
+    //published matrices are kept in dataDirectory across restarts, if it is null they only live in memory
+    public Server(int port, Path dataDirectory) {
+        this(ServerConfig.defaults(port, dataDirectory));
     }
 
+    public Server(ServerConfig config) {
+        this.config = config;
+        this.metrics = new ServerMetrics();
+        this.registry = new MatrixRegistry();
+        this.admission = new AdmissionControl(config.limits(), registry);
+        admission.registerGauges(metrics);
+        this.persistence = config.dataDirectory() == null ? null :
+                new MatrixPersistence(config.dataDirectory(), registry, metrics);
+        this.requestHandler = new RequestHandler(new FillEngine(),
+                new OperationHandler(new MatrixOperations(), admission), registry, admission, persistence,
+                config.fileDirectory() == null ? null : new MatrixFiles(config.fileDirectory()), metrics);
+        this.workers = new ThreadPoolExecutor(config.workerThreads(), config.workerThreads(), 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(WORKER_QUEUE_CAPACITY));
+        this.reactors = new ArrayList<>();
+    }
+
+    @Override
     public void run() {
         //creating the server
+        List<Thread> reactorThreads = new ArrayList<>();
         try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+            if (config.adminPort() != 0) {
+                exporter = new MetricsExporter(metrics, config.port(), config.adminPort());
+            }
+            if (persistence != null) {
+                persistence.recover();
+                for (String name : registry.getNames()) {
+                    admission.recovered(registry.get(name));
+                }
+            }
+            for (int i = 0; i < config.reactorThreads(); ++i) {
+                Reactor reactor = new Reactor(requestHandler, workers, metrics, admission);
+                reactors.add(reactor);
+                Thread thread = new Thread(reactor, "reactor-" + i);
+                reactorThreads.add(thread);
+                thread.start();
+            }
             selector = Selector.open();
             configureServerSocketChannel(serverSocketChannel, selector);
-            this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
             isServerWorking = true;
             while (isServerWorking) {
                 try {
-                    int readyChannels = selector.select();
-                    if (readyChannels == 0) {
-                        //the server was stopped from admin
-                        continue;
-                    }
-
-                    Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
-                    while (keyIterator.hasNext()) {
-                        SelectionKey key = keyIterator.next();
-                        if (key.isReadable()) {
-                            SocketChannel clientChannel = (SocketChannel) key.channel();
-                            Object matrix = key.attachment();
-                            String clientInput = getClientInput(clientChannel);
-                            if (clientInput == null) {
-                                //problem with the connection (client connection lost)
-                                continue;
-                            }
-                            if ( matrix == null) {
-                                try {
-                                    key.attach(setUpMatrix(clientInput));
-                                } catch (InvalidMatrixDimensionsException e) {
-                                    writeClientOutput(clientChannel, "invalid dimensions format passed to server");
-                                }
-                            } else {
-                                try {
-                                    List<Point> pointsPassed = getPoints(clientInput);
-                                    Matrix theMatrix = (Matrix) matrix;
-                                    //removes all points that go out of bounds
-                                    //any cell that is passed twice will be added only as its last input
-                                    //since parallel execution is undetermined in order
-                                    Set<Point> validPoints = getValidPoints(pointsPassed, theMatrix);
-                                    List<Thread> matrixFillerThreads = getListOfFillerThreads(validPoints, theMatrix);
-                                    if (matrixFillerThreads.size() == 1) {
-                                        //if it is only one we don't want to create a new thread, let it run on this one
-                                        matrixFillerThreads.iterator().next().run();
-                                    } else {
-                                        try (ExecutorService fillerServiceExecutor = Executors.newFixedThreadPool(matrixFillerThreads.size())) {
-                                            for (var matrixFiller : matrixFillerThreads) {
-                                                fillerServiceExecutor.execute(matrixFiller);
-                                            }
-                                            fillerServiceExecutor.shutdown();
-                                            try {
-                                                fillerServiceExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-                                            } catch (InterruptedException e) {
-                                                throw new RuntimeException("jvm interrupted the thread before all tasks were finished", e);
-                                            }
-                                        }
-                                    }
-                                    writeClientOutput(clientChannel, theMatrix.getMatrixAsString());
-                                } catch (InvalidPointException e) {
-                                    writeClientOutput(clientChannel, "invalid point passed");
-                                }
-                            }
-
-
-                        } else if (key.isAcceptable()) {
-                            accept(selector, key);
+                    selector.select();
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        if (key.isAcceptable()) {
+                            accept(key);
                         }
-
-                        keyIterator.remove();
                     }
+                    selector.selectedKeys().clear();
                 } catch (IOException e) {
-                    System.out.println("Error occurred while processing client request: " + e.getMessage());
+                    System.out.println("Error occurred while accepting a client: " + e.getMessage());
                 }
             }
         } catch (IOException e) {
             throw new UncheckedIOException("failed to start server", e);
+        } finally {
+            if (exporter != null) {
+                exporter.close();
+            }
+            for (Reactor reactor : reactors) {
+                reactor.stop();
+            }
+            joinAll(reactorThreads);
+            workers.shutdown();
+            closePersistence();
         }
     }
 
+    @Override
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
     public void stop() {
         this.isServerWorking = false;
-        if (selector.isOpen()) {
+        if (selector != null && selector.isOpen()) {
             selector.wakeup();
         }
     }
 
-    private void configureServerSocketChannel(ServerSocketChannel channel, Selector selector) throws IOException {
-        channel.bind(new InetSocketAddress(HOST, this.port));
-        channel.configureBlocking(false);
-        channel.register(selector, SelectionKey.OP_ACCEPT);
+    //tells the client why before closing, if its socket takes the few bytes right away
+    private static void reject(SocketChannel channel) {
+        try (channel) {
+            channel.configureBlocking(false);
+            channel.write(FrameCodec.encode("server is full, try again later"));
+        } catch (IOException e) {
+            System.out.println("Error occurred while turning a client away: " + e.getMessage());
+        }
     }
 
-    private String getClientInput(SocketChannel clientChannel) throws IOException {
-        buffer.clear();
-
-        int readBytes = clientChannel.read(buffer);
-        if (readBytes < 0) {
-            //if client socket side has closed
-            clientChannel.close();
-            return null;
+    private void joinAll(List<Thread> threads) {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        buffer.flip();
-
-        byte[] clientInputBytes = new byte[buffer.remaining()];
-        buffer.get(clientInputBytes);
-
-        return new String(clientInputBytes, StandardCharsets.UTF_8);
+    private void closePersistence() {
+        if (persistence == null) {
+            return;
+        }
+        try {
+            //requests still running may be about to log their points
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            persistence.close();
+        } catch (IOException e) {
+            System.out.println("Error occurred while closing the write-ahead log: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private void writeClientOutput(SocketChannel clientChannel, String output) throws IOException {
-        buffer.clear();
-        buffer.put(output.getBytes());
-        buffer.flip();
-        clientChannel.write(buffer);
+    private void configureServerSocketChannel(ServerSocketChannel channel, Selector selector) throws IOException {
+        channel.bind(new InetSocketAddress(HOST, config.port()));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_ACCEPT);
     }
 
-    private void accept(Selector selector, SelectionKey key) throws IOException {
+    private void accept(SelectionKey key) throws IOException {
         ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
         SocketChannel accept = sockChannel.accept();
-
-        accept.configureBlocking(false);
-        accept.register(selector, SelectionKey.OP_READ);
-    }
-
-    private Matrix setUpMatrix(String request) throws InvalidMatrixDimensionsException {
-        String[] dimensions = request.split(" ");
-        if (dimensions.length != 2) {
-            throw new InvalidMatrixDimensionsException("dimensions passed are not 2");
+        if (accept == null) {
+            return;
         }
-        int rows = Integer.parseInt(dimensions[0]);
-        int cols = Integer.parseInt(dimensions[1]);
-
-        return new Matrix(rows, cols);
-    }
-    private List<Point> getPoints(String request) throws InvalidPointException {
-        List<Point> pointsPassed = new LinkedList<>();
-        String[] points = request.split(" ");
-        if (points.length % 3 != 0 || points.length == 0) {
-            throw new InvalidPointException("invalid point passed");
-        }
-        for (int i = 0; i < points.length; i+=3 ){
-            int x = Integer.parseInt(points[i]) - 1;
-            int y = Integer.parseInt(points[i + 1]) - 1;
-            int value = Integer.parseInt(points[i + 2]);
-            pointsPassed.add(new Point(x, y, value));
-        }
-        return pointsPassed;
-
-    }
-    private boolean validPoint(Point point, Matrix matrix) {
-        return !(point.getX() < 0 || point.getX() >= matrix.getRows() ||
-            point.getY() < 0 || point.getY() >= matrix.getCols());
-    }
-    private Set<Point> getValidPoints(List<Point> points, Matrix matrix) {
-        Set<Point> validPoints = new HashSet<>();
-        for (var point : points) {
-            if (validPoint(point, matrix)) {
-                //points are equal if the represent the same cell
-                //we want the latest instance of a cell in the list to be added to the set
-                if (validPoints.contains(point)) {
-                    validPoints.remove(point);
-                }
-                validPoints.add(point);
-            }
-        }
-        return validPoints;
-    }
-    private List<Thread> getListOfFillerThreads (Set<Point> validPoints, Matrix matrix) {
-        List<Thread> fillerThreads = new LinkedList<>();
-        for (var point : validPoints) {
-            Thread fillerThread = new Thread(new MatrixFiller(matrix, point));
-            fillerThreads.add(fillerThread);
+        if (!admission.tryAcceptConnection()) {
+            reject(accept);
+            return;
         }
-        return fillerThreads;
+        reactors.get(nextReactor).assign(accept);
+        nextReactor = (nextReactor + 1) % reactors.size();
     }
-}
\ No newline at end of file
+}
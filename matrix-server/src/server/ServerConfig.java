@@ -0,0 +1,74 @@
+package server;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+//reactorThreads is the number of selector threads serving connections, workerThreads run the requests,
+//neither is used in the virtual threads mode
+//dataDirectory may be null to keep published matrices in memory only
+//fileDirectory is where import and export read and write, null turns both commands off
+//adminPort serves the metrics over http and turns on their JMX bean, 0 turns both off
+public record ServerConfig(ServerMode mode, int port, Path dataDirectory, Path fileDirectory, int reactorThreads,
+                           int workerThreads, AdmissionLimits limits, int adminPort) {
+    public static final int DEFAULT_PORT = 6666;
+    public static final int DEFAULT_ADMIN_PORT = 6667;
+    public static final String USAGE = "options: --mode selector|virtual-threads --port 6666 --data matrix-data|none" +
+            " --files matrix-files|none --reactors 1 --workers <cores> --admin-port 6667|0 --max-connections 10000" +
+            " --max-cells-per-connection <cells> --max-cells <cells> --max-request-bytes-per-connection <bytes>" +
+            " --max-request-bytes <bytes> --idle-timeout <seconds>";
+
+    public ServerConfig {
+        if (reactorThreads < 1 || workerThreads < 1) {
+            throw new IllegalArgumentException("there must be at least one reactor and one worker thread");
+        }
+    }
+
+    public static ServerConfig defaults(int port, Path dataDirectory) {
+        return new ServerConfig(ServerMode.SELECTOR, port, dataDirectory, null, 1,
+                Runtime.getRuntime().availableProcessors(), AdmissionLimits.defaults(), 0);
+    }
+
+    public static ServerConfig parse(String[] args) {
+        ServerMode mode = ServerMode.SELECTOR;
+        int port = DEFAULT_PORT;
+        Path dataDirectory = Path.of("matrix-data");
+        Path fileDirectory = Path.of("matrix-files");
+        int reactorThreads = 1;
+        int workerThreads = Runtime.getRuntime().availableProcessors();
+        int adminPort = DEFAULT_ADMIN_PORT;
+        AdmissionLimits defaultLimits = AdmissionLimits.defaults();
+        int maxConnections = defaultLimits.maxConnections();
+        long maxCellsPerConnection = defaultLimits.maxCellsPerConnection();
+        long maxCellsPerServer = defaultLimits.maxCellsPerServer();
+        long maxRequestBytesPerConnection = defaultLimits.maxRequestBytesPerConnection();
+        long maxRequestBytesPerServer = defaultLimits.maxRequestBytesPerServer();
+        long idleTimeoutNanos = defaultLimits.idleTimeoutNanos();
+
+        if (args.length % 2 != 0) {
+            throw new IllegalArgumentException("every option needs a value");
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--mode" -> mode = ServerMode.valueOf(value.toUpperCase().replace('-', '_'));
+                case "--port" -> port = Integer.parseInt(value);
+                case "--data" -> dataDirectory = value.equals("none") ? null : Path.of(value);
+                case "--files" -> fileDirectory = value.equals("none") ? null : Path.of(value);
+                case "--reactors" -> reactorThreads = Integer.parseInt(value);
+                case "--workers" -> workerThreads = Integer.parseInt(value);
+                case "--admin-port" -> adminPort = Integer.parseInt(value);
+                case "--max-connections" -> maxConnections = Integer.parseInt(value);
+                case "--max-cells-per-connection" -> maxCellsPerConnection = Long.parseLong(value);
+                case "--max-cells" -> maxCellsPerServer = Long.parseLong(value);
+                case "--max-request-bytes-per-connection" -> maxRequestBytesPerConnection = Long.parseLong(value);
+                case "--max-request-bytes" -> maxRequestBytesPerServer = Long.parseLong(value);
+                case "--idle-timeout" -> idleTimeoutNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(value));
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        return new ServerConfig(mode, port, dataDirectory, fileDirectory, reactorThreads, workerThreads,
+                new AdmissionLimits(maxConnections, maxCellsPerConnection, maxCellsPerServer,
+                        maxRequestBytesPerConnection, maxRequestBytesPerServer, idleTimeoutNanos),
+                adminPort);
+    }
+}
@@ -0,0 +1,8 @@
+package server;
+
+public enum ServerMode {
+    //reactor threads with selectors, requests run on a worker pool
+    SELECTOR,
+    //one virtual thread per connection doing blocking reads, the request runs right on that thread
+    VIRTUAL_THREADS
+}
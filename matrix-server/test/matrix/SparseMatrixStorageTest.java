@@ -0,0 +1,132 @@
+package matrix;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseMatrixStorageTest {
+    //the capacity a new storage starts with, the tests stay at most half full so it never grows
+    private static final int CAPACITY = 16;
+
+    @Test
+    void testCollidingKeysAreFoundAfterDeletesThatWrapAround() {
+        //one column, so the key of a cell is its row
+        SparseMatrixStorage storage = new SparseMatrixStorage(1);
+        List<Integer> lastSlot = rowsWithHomeSlot(CAPACITY - 1, 3);
+        List<Integer> firstSlot = rowsWithHomeSlot(0, 2);
+        //the three rows of the last slot wrap over to slots 0 and 1, the rows of slot 0 are pushed to 2 and 3
+        for (int row : lastSlot) {
+            storage.set(row, 0, row + 1);
+        }
+        for (int row : firstSlot) {
+            storage.set(row, 0, row + 1);
+        }
+
+        assertEquals(lastSlot.get(0) + 1, storage.set(lastSlot.get(0), 0, 0), "removing must return the old value");
+        assertEquals(4, storage.size(), "the removed cell must not be counted");
+        assertEquals(0, storage.get(lastSlot.get(0), 0), "a removed cell must read as zero");
+        for (int row : lastSlot.subList(1, 3)) {
+            assertEquals(row + 1, storage.get(row, 0), "a colliding key shifted across the end must be found");
+        }
+        for (int row : firstSlot) {
+            assertEquals(row + 1, storage.get(row, 0), "a key pushed by the wrapped keys must be found");
+        }
+
+        storage.set(firstSlot.get(0), 0, 0);
+        storage.set(lastSlot.get(1), 0, 0);
+        assertEquals(lastSlot.get(2) + 1, storage.get(lastSlot.get(2), 0), "the last wrapped key must be found");
+        assertEquals(firstSlot.get(1) + 1, storage.get(firstSlot.get(1), 0), "the last pushed key must be found");
+        assertEquals(2, storage.size(), "only the remaining cells must be counted");
+
+        storage.set(lastSlot.get(0), 0, 9);
+        assertEquals(9, storage.get(lastSlot.get(0), 0), "a removed key must be insertable again");
+        assertEquals(3, storage.size(), "the inserted cell must be counted");
+    }
+
+    @Test
+    void testRandomSetsMatchAMap() {
+        Random random = new Random(42);
+        int rows = 64;
+        int cols = 32;
+        SparseMatrixStorage storage = new SparseMatrixStorage(cols);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; ++i) {
+            int row = random.nextInt(rows);
+            int col = random.nextInt(cols);
+            //half of the writes are zeros, so removes are as common as inserts
+            int value = random.nextBoolean() ? 0 : random.nextInt(100) + 1;
+            Integer previous = value == 0 ? expected.remove((long) row * cols + col)
+                    : expected.put((long) row * cols + col, value);
+            assertEquals(previous == null ? 0 : previous, storage.set(row, col, value),
+                    "set must return the previous value");
+        }
+        assertEquals(expected.size(), storage.size(), "the size must count the non-zero cells");
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                assertEquals(expected.getOrDefault((long) row * cols + col, 0), storage.get(row, col),
+                        "every cell must read as last written");
+            }
+        }
+    }
+
+    @Test
+    void testMatrixTurnsDenseOnceSparseTakesMoreMemory() {
+        //big enough to start sparse
+        int rows = 256;
+        int cols = 256;
+        Matrix matrix = new Matrix(rows, cols);
+        assertEquals(StorageType.SPARSE, matrix.getStorageType(), "a big matrix must start sparse");
+
+        int cells = rows * cols;
+        int set = 0;
+        for (; set * 8 < cells; ++set) {
+            matrix.insertValue(set / cols, set % cols, set + 1);
+            assertEquals(StorageType.SPARSE, matrix.getStorageType(),
+                    "the matrix must stay sparse while size * 8 <= cells");
+        }
+        matrix.insertValue(set / cols, set % cols, set + 1);
+        assertEquals(StorageType.FLAT, matrix.getStorageType(), "the matrix must turn dense once size * 8 > cells");
+        for (int i = 0; i <= set; ++i) {
+            assertEquals(i + 1, matrix.getValue(i / cols, i % cols), "every cell must survive the switch");
+        }
+    }
+
+    @Test
+    void testZerosDoNotCountTowardsTheSwitch() {
+        int rows = 256;
+        int cols = 256;
+        Matrix matrix = new Matrix(rows, cols);
+        for (int i = 0; i < rows * cols; ++i) {
+            matrix.insertValue(i / cols, i % cols, 0);
+        }
+        assertEquals(StorageType.SPARSE, matrix.getStorageType(), "zeros must not make the matrix dense");
+    }
+
+    //the first rows whose keys hash to the given slot of a table of the starting capacity
+    private static List<Integer> rowsWithHomeSlot(int slot, int count) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; rows.size() < count; ++row) {
+            if (homeSlot(row) == slot) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    //the same finalizer the storage hashes keys with
+    private static int homeSlot(long key) {
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash & (CAPACITY - 1);
+    }
+}
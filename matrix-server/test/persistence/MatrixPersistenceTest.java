@@ -0,0 +1,201 @@
+package persistence;
+
+import matrix.Matrix;
+import metrics.ServerMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import point.PointBatch;
+import server.MatrixRegistry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatrixPersistenceTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPublishUnderSecondNameIsRejected() throws IOException {
+        MatrixRegistry registry = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, registry, new ServerMetrics())) {
+            persistence.recover();
+            Matrix shared = new Matrix(4, 4);
+            assertTrue(persistence.publish("shared", shared), "a new name must be published");
+            assertFalse(persistence.publish("alias", shared), "a published matrix must not get a second name");
+            assertNull(registry.get("alias"), "the rejected name must not be in the registry");
+        }
+    }
+
+    @Test
+    void testRecoveredMatrixKeepsWritesToItsName() throws IOException {
+        MatrixRegistry registry = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, registry, new ServerMetrics())) {
+            persistence.recover();
+            Matrix shared = new Matrix(4, 4);
+            shared.insertValue(0, 0, 7);
+            persistence.publish("shared", shared);
+            persistence.publish("alias", shared);
+            write(persistence, "shared", shared, 1, 2, 42);
+        }
+
+        MatrixRegistry recovered = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recovered, new ServerMetrics())) {
+            persistence.recover();
+            Matrix shared = recovered.get("shared");
+            assertNotNull(shared, "the published matrix must be recovered");
+            assertNull(recovered.get("alias"), "a rejected name must not come back after a restart");
+            assertEquals(7, shared.getValue(0, 0), "cells set before publishing must be recovered");
+            assertEquals(42, shared.getValue(1, 2), "writes to the published name must be recovered");
+
+            write(persistence, "shared", shared, 3, 3, 5);
+        }
+
+        MatrixRegistry recoveredAgain = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recoveredAgain, new ServerMetrics())) {
+            persistence.recover();
+            Matrix shared = recoveredAgain.get("shared");
+            assertEquals(42, shared.getValue(1, 2), "writes before the first restart must survive the second one");
+            assertEquals(5, shared.getValue(3, 3), "writes after a restart must be recovered");
+        }
+    }
+
+    @Test
+    void testEachPublishedMatrixIsRecoveredOnItsOwn() throws IOException {
+        MatrixRegistry registry = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, registry, new ServerMetrics())) {
+            persistence.recover();
+            Matrix first = new Matrix(2, 2);
+            Matrix second = new Matrix(2, 2);
+            persistence.publish("first", first);
+            persistence.publish("second", second);
+            write(persistence, "first", first, 0, 1, 3);
+        }
+
+        MatrixRegistry recovered = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recovered, new ServerMetrics())) {
+            persistence.recover();
+            assertNotSame(recovered.get("first"), recovered.get("second"), "two matrices must stay two");
+            assertEquals(3, recovered.get("first").getValue(0, 1), "the write must be in the matrix it went to");
+            assertEquals(0, recovered.get("second").getValue(0, 1), "the write must not leak to another matrix");
+        }
+    }
+
+    @Test
+    void testUnpublishedNameIsNotRecovered() throws IOException {
+        MatrixRegistry registry = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, registry, new ServerMetrics())) {
+            persistence.recover();
+            Matrix first = new Matrix(2, 2);
+            persistence.publish("shared", first);
+            write(persistence, "shared", first, 0, 0, 1);
+            assertTrue(persistence.unpublish("shared", first), "a published name must be unpublished");
+            assertFalse(persistence.isPersistent("shared", first), "writes after unpublishing must not be logged");
+            assertEquals(-1, persistence.logPoints("shared", first, new PointBatch()),
+                    "a batch for an unpublished name must not be logged");
+
+            Matrix second = new Matrix(2, 2);
+            assertTrue(persistence.publish("shared", second), "an unpublished name must be free again");
+            write(persistence, "shared", second, 1, 1, 2);
+        }
+
+        MatrixRegistry recovered = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recovered, new ServerMetrics())) {
+            persistence.recover();
+            Matrix shared = recovered.get("shared");
+            assertEquals(0, shared.getValue(0, 0), "writes to the unpublished matrix must not come back");
+            assertEquals(2, shared.getValue(1, 1), "writes to the matrix published afterwards must be recovered");
+            assertTrue(persistence.unpublish("shared", shared), "a recovered name must be unpublished");
+        }
+
+        MatrixRegistry recoveredAgain = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recoveredAgain, new ServerMetrics())) {
+            persistence.recover();
+            assertNull(recoveredAgain.get("shared"), "an unpublished name must stay unpublished after a restart");
+        }
+    }
+
+    @Test
+    void testPublishedCellsAreRecovered() throws IOException {
+        Matrix matrix = new Matrix(50, 40);
+        for (int i = 0; i < 50; ++i) {
+            for (int j = 0; j < 40; j += 3) {
+                matrix.insertValue(i, j, i * 40 + j + 1);
+            }
+        }
+        MatrixRegistry registry = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, registry, new ServerMetrics())) {
+            persistence.recover();
+            assertTrue(persistence.publish("cells", matrix), "the matrix must be published");
+            List<LogRecord> records = WriteAheadLog.read(WriteAheadLog.logFile(directory, 1));
+            assertEquals(50 * 14, records.get(0).points().size(), "the record must hold every non-zero cell");
+        }
+
+        MatrixRegistry recovered = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recovered, new ServerMetrics())) {
+            persistence.recover();
+            Matrix copy = recovered.get("cells");
+            for (int i = 0; i < 50; ++i) {
+                for (int j = 0; j < 40; ++j) {
+                    assertEquals(matrix.getValue(i, j), copy.getValue(i, j), "cell " + i + " " + j + " must be recovered");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTooLongNameIsRejectedBeforeLogging() throws IOException {
+        String longest = "ж".repeat(127) + "a";
+        String tooLong = longest + "a";
+        MatrixRegistry registry = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, registry, new ServerMetrics())) {
+            persistence.recover();
+            assertFalse(persistence.publish(tooLong, new Matrix(2, 2)), "a name over the limit must be rejected");
+            assertTrue(persistence.publish(longest, new Matrix(2, 2)), "a name at the limit must be published");
+        }
+
+        MatrixRegistry recovered = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recovered, new ServerMetrics())) {
+            persistence.recover();
+            assertNotNull(recovered.get(longest), "a name at the limit must be recovered");
+            assertNull(recovered.get(tooLong), "a rejected name must not be logged");
+        }
+    }
+
+    @Test
+    void testNameLongerThanAShortIsRecovered() throws IOException {
+        //logged before names were limited, its length does not fit in a signed short
+        String name = "n".repeat(40_000);
+        Matrix matrix = new Matrix(2, 2);
+        matrix.insertValue(1, 0, 9);
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1, new ServerMetrics())) {
+            log.awaitDurable(log.appendPublish(name, matrix, () -> true));
+        }
+        assertEquals(name, WriteAheadLog.read(WriteAheadLog.logFile(directory, 1)).get(0).name(),
+                "the name must be read back from the log");
+
+        MatrixRegistry recovered = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recovered, new ServerMetrics())) {
+            persistence.recover();
+            assertEquals(9, recovered.get(name).getValue(1, 0), "the matrix must be recovered from the log");
+        }
+
+        //recovering folded the log into a snapshot
+        MatrixRegistry recoveredAgain = new MatrixRegistry();
+        try (MatrixPersistence persistence = new MatrixPersistence(directory, recoveredAgain, new ServerMetrics())) {
+            persistence.recover();
+            assertEquals(9, recoveredAgain.get(name).getValue(1, 0), "the matrix must be recovered from the snapshot");
+        }
+    }
+
+    //what the request handler does for a batch of points to a published matrix
+    private static void write(MatrixPersistence persistence, String name, Matrix matrix, int row, int col, int value) {
+        PointBatch points = new PointBatch();
+        points.add(row, col, value);
+        assertTrue(persistence.isPersistent(name, matrix), "writes to a published matrix must be logged");
+        persistence.awaitDurable(persistence.logPoints(name, matrix, points));
+        matrix.insertValue(row, col, value);
+    }
+}
@@ -0,0 +1,54 @@
+package point;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CellSetTest {
+    @Test
+    void testDuplicateCellsAreReported() {
+        CellSet cells = new CellSet(4);
+        assertTrue(cells.add(7), "a new key must be added");
+        assertTrue(cells.add(0), "the zero key must be added");
+        assertFalse(cells.add(7), "a key added before must be reported");
+        assertFalse(cells.add(0), "the zero key added before must be reported");
+    }
+
+    @Test
+    void testSetHoldsTheExpectedSize() {
+        int expected = 1000;
+        CellSet cells = new CellSet(expected);
+        for (long key = 0; key < expected; ++key) {
+            assertTrue(cells.add(key * 4096), "every distinct key must be added");
+        }
+        for (long key = 0; key < expected; ++key) {
+            assertFalse(cells.add(key * 4096), "every key must be found again");
+        }
+    }
+
+    @Test
+    void testTinySetsHoldTheirKeys() {
+        for (int expected = 0; expected <= 3; ++expected) {
+            CellSet cells = new CellSet(expected);
+            for (int key = 0; key < expected; ++key) {
+                assertTrue(cells.add(Long.MAX_VALUE - key), "every distinct key must be added");
+            }
+            for (int key = 0; key < expected; ++key) {
+                assertFalse(cells.add(Long.MAX_VALUE - key), "every key must be found again");
+            }
+        }
+    }
+
+    @Test
+    void testLastWriteOfACellIsKept() {
+        PointBatch points = new PointBatch();
+        points.add(0, 0, 1);
+        points.add(5, 0, 2);
+        points.add(1, 1, 3);
+        points.add(0, 0, 4);
+        points.retainLastWithin(2, 2);
+        assertEquals(2, points.size(), "duplicates and points outside the matrix must be dropped");
+        assertEquals(3, points.getValue(0), "the survivors must keep their order");
+        assertEquals(4, points.getValue(1), "the last write of a cell must win");
+    }
+}
@@ -0,0 +1,78 @@
+package point;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointParserTest {
+    @Test
+    void testPointsAreParsedZeroBased() throws InvalidPointException {
+        PointBatch points = parse("  1 2 3\n\t4 5 -6 ");
+        assertEquals(2, points.size(), "every triple must become a point");
+        assertEquals(0, points.getRow(0), "rows must be zero based");
+        assertEquals(1, points.getCol(0), "cols must be zero based");
+        assertEquals(3, points.getValue(0), "the value must be kept as is");
+        assertEquals(3, points.getRow(1), "rows must be zero based");
+        assertEquals(4, points.getCol(1), "cols must be zero based");
+        assertEquals(-6, points.getValue(1), "a negative value must be kept");
+    }
+
+    @Test
+    void testParsingDoesNotMoveThePosition() throws InvalidPointException {
+        ByteBuffer request = ByteBuffer.wrap("x 1 1 1".getBytes(StandardCharsets.US_ASCII));
+        request.position(1);
+        assertEquals(1, PointParser.parse(request).size(), "parsing must start at the position");
+        assertEquals(1, request.position(), "the position must not move");
+    }
+
+    @Test
+    void testEmptyInputIsRejected() {
+        assertThrows(InvalidPointException.class, () -> parse(""), "an empty request has no points");
+        assertThrows(InvalidPointException.class, () -> parse(" \t\n "), "whitespace alone has no points");
+        assertFalse(PointParser.startsWithNumber(ByteBuffer.wrap(new byte[0])),
+                "an empty request does not start with a number");
+    }
+
+    @Test
+    void testMalformedPointsAreRejected() {
+        assertThrows(InvalidPointException.class, () -> parse("1 2"), "an incomplete triple must be rejected");
+        assertThrows(InvalidPointException.class, () -> parse("1 1 1 2"), "a trailing number must be rejected");
+        assertThrows(InvalidPointException.class, () -> parse("1 2 x"), "a word must be rejected");
+        assertThrows(InvalidPointException.class, () -> parse("1a 2 3"), "a number glued to a word must be rejected");
+        assertThrows(InvalidPointException.class, () -> parse("1 - 3"), "a lone sign must be rejected");
+        assertThrows(InvalidPointException.class, () -> parse("0 1 3"), "rows start at one");
+        assertThrows(InvalidPointException.class, () -> parse("1 -1 3"), "cols start at one");
+    }
+
+    @Test
+    void testOverflowIsRejected() throws InvalidPointException {
+        assertThrows(InvalidPointException.class, () -> parse("1 1 2147483648"),
+                "a value above the int range must be rejected");
+        assertThrows(InvalidPointException.class, () -> parse("1 1 -2147483649"),
+                "a value below the int range must be rejected");
+        assertThrows(InvalidPointException.class, () -> parse("99999999999999999999 1 1"),
+                "a row far above the int range must be rejected");
+
+        PointBatch points = parse("2147483647 1 -2147483648");
+        assertEquals(Integer.MAX_VALUE - 1, points.getRow(0), "the largest row must fit");
+        assertEquals(Integer.MIN_VALUE, points.getValue(0), "the smallest value must fit");
+    }
+
+    @Test
+    void testStartsWithNumber() {
+        assertTrue(PointParser.startsWithNumber(wrap("  12 1 1")), "digits start points");
+        assertTrue(PointParser.startsWithNumber(wrap("-1")), "a sign starts points");
+        assertFalse(PointParser.startsWithNumber(wrap(" create m 1 1")), "a command is not points");
+    }
+
+    private static PointBatch parse(String request) throws InvalidPointException {
+        return PointParser.parse(wrap(request));
+    }
+
+    private static ByteBuffer wrap(String request) {
+        return ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII));
+    }
+}
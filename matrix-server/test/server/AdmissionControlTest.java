@@ -0,0 +1,77 @@
+package server;
+
+import matrix.Matrix;
+import org.junit.jupiter.api.Test;
+import protocol.FrameCodec;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//drives AdmissionControl with the calls RequestHandler makes for each command
+class AdmissionControlTest {
+    private final MatrixRegistry registry = new MatrixRegistry();
+    private final AdmissionControl admission = new AdmissionControl(new AdmissionLimits(10, 1_000_000, 1_000_000,
+            2L * (FrameCodec.HEADER_SIZE + FrameCodec.MAX_REQUEST_SIZE), 1024 * 1024, TimeUnit.MINUTES.toNanos(1)),
+            registry);
+
+    @Test
+    void testPublishedMatrixIsFreedOnceUnpublishedAndLetGoOf() throws LimitExceededException {
+        ClientConnection owner = connect();
+        Matrix matrix = admission.allocate(owner, 10, 20, () -> new Matrix(10, 20));
+        admission.dropped(owner, owner.putMatrix("own", matrix));
+        assertEquals(200, admission.getCells(), "an allocated matrix must be counted");
+
+        assertTrue(registry.publish("shared", matrix), "a free name must be published");
+        admission.published(owner, matrix);
+        admission.dropped(owner, owner.putMatrix("shared", matrix));
+
+        ClientConnection reader = connect();
+        Matrix opened = registry.get("shared");
+        assertTrue(admission.tryHold(reader, opened), "a published matrix must be opened");
+        admission.dropped(reader, reader.putMatrix("shared", opened));
+
+        assertTrue(registry.unpublish("shared", matrix), "a published name must be unpublished");
+        admission.unpublished(matrix);
+        assertEquals(200, admission.getCells(), "a matrix still held must stay counted");
+        assertEquals(1, admission.getLiveMatrices(), "a matrix still held must stay live");
+
+        admission.connectionClosed(owner);
+        assertEquals(200, admission.getCells(), "a matrix the other connection holds must stay counted");
+        admission.connectionClosed(reader);
+        assertEquals(0, admission.getCells(), "all cells must be given back once nothing holds the matrix");
+        assertEquals(0, admission.getLiveMatrices(), "no matrix must be live once nothing holds it");
+        assertEquals(0, admission.getConnections(), "both connection slots must be given back");
+    }
+
+    @Test
+    void testConnectionClosedWhileAllocatingKeepsNothing() throws LimitExceededException {
+        ClientConnection connection = connect();
+        Matrix matrix = admission.allocate(connection, 10, 20, () -> {
+            assertEquals(200, admission.getCells(), "the cells must be reserved before the matrix is made");
+            admission.connectionClosed(connection);
+            return new Matrix(10, 20);
+        });
+        admission.dropped(connection, connection.putMatrix("late", matrix));
+        assertEquals(0, admission.getCells(), "closing must give back the reservation of the matrix being made");
+        assertEquals(0, admission.getLiveMatrices(), "a matrix made for a closed connection must not be live");
+        assertEquals(0, admission.getConnections(), "the connection slot must be given back");
+    }
+
+    @Test
+    void testFailedAllocationGivesTheReservationBack() {
+        ClientConnection connection = connect();
+        assertThrows(IllegalStateException.class, () -> admission.allocate(connection, 10, 20, () -> {
+            throw new IllegalStateException("no memory for the matrix");
+        }), "the failure of the factory must be passed on");
+        assertEquals(0, admission.getCells(), "a matrix that was never made must not keep its cells");
+        assertEquals(0, admission.getLiveMatrices(), "a matrix that was never made must not be live");
+        admission.connectionClosed(connection);
+    }
+
+    private ClientConnection connect() {
+        assertTrue(admission.tryAcceptConnection(), "the connection must be accepted");
+        //the channel is never touched by admission control
+        return new ClientConnection(null);
+    }
+}
@@ -0,0 +1,29 @@
+package server;
+
+import matrix.Matrix;
+import matrix.StorageType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatrixRegistryTest {
+    @Test
+    void testRejectedPublishLeavesTheMatrixSparse() {
+        MatrixRegistry registry = new MatrixRegistry();
+        assertTrue(registry.publish("taken", new Matrix(1000, 1000)), "a free name must be published");
+        Matrix sparse = new Matrix(1000, 1000, StorageType.SPARSE);
+        assertFalse(registry.publish("taken", sparse), "a taken name must be rejected");
+        assertEquals(StorageType.SPARSE, sparse.getStorageType(), "a rejected matrix must not be made dense");
+    }
+
+    @Test
+    void testPublishedMatrixIsDense() {
+        MatrixRegistry registry = new MatrixRegistry();
+        Matrix sparse = new Matrix(1000, 1000, StorageType.SPARSE);
+        sparse.insertValue(3, 4, 5);
+        assertTrue(registry.publish("shared", sparse), "a free name must be published");
+        assertNotEquals(StorageType.SPARSE, sparse.getStorageType(), "a published matrix must be dense");
+        assertTrue(sparse.supportsConcurrentRowWrites(), "writers of different rows must be able to share it");
+        assertEquals(5, sparse.getValue(3, 4), "making it dense must keep the cells");
+    }
+}